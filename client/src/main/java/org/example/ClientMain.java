@@ -1,35 +1,40 @@
 package org.example;
 
+import org.example.client.Backoff;
+import org.example.client.ServerConnection;
 import org.example.comands.Command;
 import org.example.comands.*;
-import org.example.network.Request;
 import org.example.network.Response;
+import org.example.network.codec.Codec;
+import org.example.network.codec.Codecs;
 import org.example.consol.Console;
 import org.example.consol.StandartConsole;
 import org.example.exceptions.CommandExecutionError;
 import org.example.exceptions.CommandNotFoundException;
 
 import java.io.IOException;
-import java.io.ByteArrayOutputStream;
-import java.io.ObjectOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ObjectInputStream;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
-import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Scanner;
-import java.util.concurrent.TimeUnit;
 
 public class ClientMain {
     private static final String SERVER_HOST = "localhost";
     private static final int SERVER_PORT = 12345;
-    private static final long RECONNECTION_DELAY_MS = 300;
-    private static final int MAX_RECONNECTION_ATTEMPTS = 5;
-    private static final int BUFFER_SIZE = 8192;
+    // пауза между попытками подключения: 300 мс, потом вдвое больше, но не дольше 5 с
+    private static final Backoff RECONNECT_BACKOFF = new Backoff(300, 5_000, 5);
+    // -Dcodec=serialization чтобы принудительно говорить с сервером по-старому
+    private static final Codec PREFERRED_CODEC = Codecs.forName(System.getProperty("codec", "binary"));
+    // сколько запросов скрипта может быть отправлено без ответа
+    private static final int PIPELINE_WINDOW = Math.max(1, Integer.getInteger("pipeline.window", 64));
+    // сколько изменений скрипта подряд склеивается в одну команду batch, 1 - не склеивать
+    private static final int BATCH_LIMIT = Math.max(1, Integer.getInteger("batch.size", 500));
 
     private final Console console = new StandartConsole();
     private final CommandManager commandManager = new CommandManager();
-    private SocketChannel socketChannel;
+    private ServerConnection connection;
 
     public static void main(String[] args) {
         new ClientMain().run();
@@ -38,99 +43,203 @@ public class ClientMain {
     private void initializeCommands() {
         commandManager.registerCommand(new Help(console, commandManager));
         commandManager.registerCommand(new Exit(console));
-        commandManager.registerCommand(new ExecuteScript(console, commandManager));
+        commandManager.registerCommand(new ExecuteScript(console, commandManager, new ScriptPipeline()));
 
         commandManager.registerCommand(new ServerCommand("info", "показывает инфо о коллекциях"));
-        commandManager.registerCommand(new ServerCommand("show", "показывает все элементы коллекции"));
-        commandManager.registerCommand(new ServerCommand("insert", "добавляет новый элемент"));
-        commandManager.registerCommand(new ServerCommand("update", "обновляет элемент по айди"));
-        commandManager.registerCommand(new ServerCommand("remove_key", "удаляет элемент по айди"));
-                commandManager.registerCommand(new ServerCommand("clear", "очищает коллекцию"));
-        commandManager.registerCommand(new ServerCommand("replace_if_greater", "замена если больше"));
-        commandManager.registerCommand(new ServerCommand("remove_greater_key", "удаляет элементы с айди больше чем"));
-        commandManager.registerCommand(new ServerCommand("remove_lower_key", "удаляет элементы с айди меньше чем"));
+        commandManager.registerCommand(new ServerCommand("show", "показывает все элементы коллекции, show <offset> <limit> - только страницу"));
+        commandManager.registerCommand(new ServerCommand("insert", "добавляет новый элемент", true));
+        commandManager.registerCommand(new ServerCommand("update", "обновляет элемент по айди", true));
+        commandManager.registerCommand(new ServerCommand("remove_key", "удаляет элемент по айди", true));
+                commandManager.registerCommand(new ServerCommand("clear", "очищает коллекцию", true));
+        commandManager.registerCommand(new ServerCommand("replace_if_greater", "замена если больше", true));
+        commandManager.registerCommand(new ServerCommand("remove_greater_key", "удаляет элементы с айди больше чем", true));
+        commandManager.registerCommand(new ServerCommand("remove_lower_key", "удаляет элементы с айди меньше чем", true));
         commandManager.registerCommand(new ServerCommand("remove_all_by_standard_of_living",
-                "удаляет все города с этими стандартами проживания"));
+                "удаляет все города с этими стандартами проживания", true));
         commandManager.registerCommand(new ServerCommand("average_of_meters_above_sea_level",
                 "считает среднее значение высоты над уровнем моря"));
         commandManager.registerCommand(new ServerCommand("filter_starts_with_name",
                 "фильтрует элементы по названию"));
+        commandManager.registerCommand(new ServerCommand("filter_key_range",
+                "показывает элементы с ключами от и до"));
+        commandManager.registerCommand(new ServerCommand("show_top", "показывает n самых населенных городов"));
+        commandManager.registerCommand(new ServerCommand("show_bottom", "показывает n самых малонаселенных городов"));
+        commandManager.registerCommand(new ServerCommand("fetch", "следующая часть большого ответа по токену курсора"));
+        commandManager.registerCommand(new ServerCommand("count_by_category",
+                "считает города по значениям climate, government или standard_of_living"));
+        commandManager.registerCommand(new ServerCommand("filter_by_category",
+                "показывает города с заданным значением climate, government или standard_of_living"));
+        commandManager.registerCommand(new ServerCommand("cache_stats", "статистика кэша ответов на сервере"));
     }
 
     private class ServerCommand extends Command {
+        private final boolean batchable; // изменение, которое можно отправить в составе batch
+
         public ServerCommand(String name, String description) {
+            this(name, description, false);
+        }
+
+        public ServerCommand(String name, String description, boolean batchable) {
             super(name, description);
+            this.batchable = batchable;
         }
 
         @Override
         public void execute(String[] args) throws CommandExecutionError {
             try {
-                Request request = new Request(this.getName(), args);
-                Response response = sendRequest(request);
-                console.writeln(response.getMessage());
-                if (response.getData() != null) {
-                    console.writeln(response.getData().toString());
-                }
-            } catch (IOException | ClassNotFoundException e) {
-                throw new CommandExecutionError("Error sending request to server: " + e.getMessage());
+                complete(send(this.getName(), args));
+            } catch (IOException e) {
+                throw new CommandExecutionError("Error sending request to server: " + e.getMessage(), e);
             }
         }
     }
 
-    private Response sendRequest(Request request) throws IOException, ClassNotFoundException {
-        if (socketChannel == null || !socketChannel.isConnected()) {
-            throw new IOException("Not connected to the server.");
-        }
-
-        // сериализуем запрос в байты
-        byte[] requestBytes = serialize(request);
-        ByteBuffer buffer = ByteBuffer.wrap(requestBytes);
-        socketChannel.write(buffer);
-        buffer.clear();
+    // изменения подряд копятся и уходят одной командой batch, остальное - по запросу на команду.
+    // в пути держится не больше PIPELINE_WINDOW запросов, ответы печатаются в порядке отправки
+    private class ScriptPipeline implements Pipeline {
+        private final ArrayDeque<Sent> inFlight = new ArrayDeque<>();
+        private final List<String[]> batch = new ArrayList<>();
 
-        // получаем и читаем ответ
-        ByteBuffer responseBuffer = ByteBuffer.allocate(BUFFER_SIZE);
-        int bytesRead = socketChannel.read(responseBuffer);
-        if (bytesRead == -1) {
-            throw new IOException("Server disconnected.");
+        @Override
+        public boolean accepts(Command command) {
+            return command instanceof ServerCommand;
         }
-        responseBuffer.flip();
-        byte[] responseBytes = new byte[responseBuffer.remaining()];
-        responseBuffer.get(responseBytes);
-        Response response = deserialize(responseBytes);
-        return response;
-    }
 
-    private void connect() throws IOException {
-        int attempts = 0;
-        while (attempts < MAX_RECONNECTION_ATTEMPTS) {
+        @Override
+        public void submit(Command command, String[] args) throws CommandExecutionError {
             try {
-                socketChannel = SocketChannel.open();
-                socketChannel.connect(new InetSocketAddress(SERVER_HOST, SERVER_PORT));
-                console.writeln("Connected to server at " + SERVER_HOST + ":" + SERVER_PORT);
-                return; // Успешное подключение, выходим из метода
-            } catch (IOException e) {
-                attempts++;
-                console.writeln("Failed to connect to server (attempt " + attempts + "/" + MAX_RECONNECTION_ATTEMPTS + "): " + e.getMessage());
-                if (attempts >= MAX_RECONNECTION_ATTEMPTS) {
-                    throw new IOException("Failed to connect to server after " + MAX_RECONNECTION_ATTEMPTS + " attempts.", e);
+                if (((ServerCommand) command).batchable && BATCH_LIMIT > 1) {
+                    String[] operation = new String[args.length + 1];
+                    operation[0] = command.getName();
+                    System.arraycopy(args, 0, operation, 1, args.length);
+                    batch.add(operation);
+                    if (batch.size() >= BATCH_LIMIT) {
+                        sendBatch();
+                    }
+                    return;
                 }
-                try {
-                    TimeUnit.MILLISECONDS.sleep(RECONNECTION_DELAY_MS);
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
-                    throw new IOException("Connection interrupted.", ie);
+                sendBatch();
+                String line = command.getName() + (args.length > 0 ? " " + String.join(" ", args) : "");
+                enqueue(new Sent(send(command.getName(), args), List.of(line)));
+            } catch (IOException e) {
+                throw new CommandExecutionError("Error sending request to server: " + e.getMessage() + discarded(), e);
+            }
+        }
+
+        @Override
+        public void flush() throws CommandExecutionError {
+            try {
+                sendBatch();
+                while (!inFlight.isEmpty()) {
+                    complete(inFlight.peek().id);
+                    inFlight.poll();
                 }
+            } catch (IOException e) {
+                throw new CommandExecutionError("Error reading response from server: " + e.getMessage() + discarded(), e);
+            }
+        }
+
+        private void sendBatch() throws IOException {
+            if (batch.isEmpty()) {
+                return;
+            }
+            List<String> lines = new ArrayList<>(batch.size());
+            for (String[] operation : batch) {
+                lines.add(String.join(" ", operation));
+            }
+            int id = send("batch", batch.toArray());
+            batch.clear();
+            enqueue(new Sent(id, lines));
+        }
+
+        private void enqueue(Sent sent) throws IOException {
+            if (inFlight.size() >= PIPELINE_WINDOW) {
+                complete(inFlight.peek().id);
+                inFlight.poll();
+            }
+            inFlight.add(sent);
+        }
+
+        // соединение потеряно: все, что еще копится или ждет ответа, выбрасываем и говорим пользователю, что именно.
+        // отправленное сервер мог и выполнить, но подтверждения уже не будет
+        private String discarded() {
+            List<String> lines = new ArrayList<>();
+            for (Sent sent : inFlight) {
+                lines.addAll(sent.lines);
+            }
+            for (String[] operation : batch) {
+                lines.add(String.join(" ", operation));
+            }
+            inFlight.clear();
+            batch.clear();
+            if (lines.isEmpty()) {
+                return "";
             }
+            return "\nбез подтверждения сервера отброшено команд скрипта: " + lines.size()
+                    + ", первая из них: '" + lines.get(0) + "', последняя: '" + lines.get(lines.size() - 1) + "'";
+        }
+    }
+
+    // запрос скрипта в пути и строки скрипта, которые он несет
+    private static final class Sent {
+        final int id;
+        final List<String> lines;
+
+        Sent(int id, List<String> lines) {
+            this.id = id;
+            this.lines = lines;
+        }
+    }
+
+    // печатает весь ответ на запрос id
+    private void complete(int id) throws IOException {
+        Response response = receive(id);
+        print(response);
+        // длинный ответ приходит кусками, печатаем каждый сразу и ничего не копим
+        while (response.isPartial()) {
+            response = receive(id);
+            print(response);
+        }
+        // по курсору следующие куски забираем сами, по одному запросу на кусок
+        while (response.getToken() != null) {
+            response = receive(send("fetch", new String[]{response.getToken()}));
+            print(response);
+        }
+    }
+
+    private void print(Response response) {
+        if (response.getMessage() != null) {
+            console.writeln(response.getMessage());
         }
-        throw new IOException("Failed to connect after max attempts"); //Если дошли сюда и не вышли из цикла - ошибка
+        if (response.getData() instanceof Collection) {
+            ((Collection<?>) response.getData()).forEach(item -> console.writeln(String.valueOf(item)));
+        } else if (response.getData() != null) {
+            console.writeln(response.getData().toString());
+        }
+    }
+
+    private int send(String commandName, Object arguments) throws IOException {
+        if (connection == null) {
+            throw new IOException("Not connected to the server.");
+        }
+        return connection.send(commandName, arguments);
+    }
+
+    private Response receive(int id) throws IOException {
+        return connection.receive(id);
+    }
+
+    private void connect() throws IOException {
+        connection = ServerConnection.open(new InetSocketAddress(SERVER_HOST, SERVER_PORT), PREFERRED_CODEC,
+                RECONNECT_BACKOFF, console::writeln);
+        console.writeln("Connected to server at " + SERVER_HOST + ":" + SERVER_PORT + " (codec: " + connection.getCodec().getName() + ")");
     }
 
     private void disconnect() {
         try {
-            if (socketChannel != null) {
-                socketChannel.close();
-                socketChannel = null;
+            if (connection != null) {
+                connection.close();
+                connection = null;
                 console.writeln("Disconnected from server.");
             }
         } catch (IOException e) {
@@ -194,18 +303,4 @@ public class ClientMain {
             console.writeln("Client stopped");
         }
     }
-    private static byte[] serialize(Object obj) throws IOException {
-        try (ByteArrayOutputStream bos = new ByteArrayOutputStream();
-             ObjectOutputStream oos = new ObjectOutputStream(bos)) {
-            oos.writeObject(obj);
-            return bos.toByteArray();
-        }
-    }
-
-    private static Response deserialize(byte[] data) throws IOException, ClassNotFoundException {
-        try (ByteArrayInputStream bis = new ByteArrayInputStream(data);
-             ObjectInputStream ois = new ObjectInputStream(bis)) {
-            return (Response) ois.readObject();
-        }
-    }
 }
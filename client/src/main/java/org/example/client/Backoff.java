@@ -0,0 +1,28 @@
+package org.example.client;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// пауза между попытками подключения растет вдвое, но не больше max.
+// немного случайности, чтобы после падения сервера клиенты не ломились все в одну и ту же миллисекунду
+public class Backoff {
+    private final long initialDelayMs;
+    private final long maxDelayMs;
+    private final int maxAttempts;
+
+    public Backoff(long initialDelayMs, long maxDelayMs, int maxAttempts) {
+        this.initialDelayMs = initialDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.maxAttempts = maxAttempts;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    // пауза после неудачной попытки номер attempt, считая с 1
+    public long delay(int attempt) {
+        long delay = initialDelayMs << Math.min(attempt - 1, 20);
+        delay = Math.min(delay, maxDelayMs);
+        return delay - ThreadLocalRandom.current().nextLong(delay / 4 + 1);
+    }
+}
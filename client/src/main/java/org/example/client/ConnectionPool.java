@@ -0,0 +1,81 @@
+package org.example.client;
+
+import org.example.network.codec.Codec;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// не больше maxConnections соединений на всех. свободные лежат в очереди и переиспользуются,
+// новое открывается, только когда свободных нет, а лимит еще не выбран
+public class ConnectionPool implements AutoCloseable {
+    private final InetSocketAddress address;
+    private final Codec codec;
+    private final Backoff backoff;
+    private final Semaphore permits;
+    private final BlockingQueue<ServerConnection> idle = new LinkedBlockingQueue<>();
+    private volatile boolean closed;
+
+    public ConnectionPool(InetSocketAddress address, Codec codec, Backoff backoff, int maxConnections) {
+        this.address = address;
+        this.codec = codec;
+        this.backoff = backoff;
+        this.permits = new Semaphore(maxConnections);
+    }
+
+    // соединение в монопольное пользование, вернуть через release или discard
+    public ServerConnection borrow(long timeoutMs) throws IOException, InterruptedException {
+        if (closed) {
+            throw new IOException("Connection pool is closed.");
+        }
+        if (!permits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+            throw new IOException("No free connection within " + timeoutMs + " ms.");
+        }
+        try {
+            ServerConnection connection;
+            while ((connection = idle.poll()) != null) {
+                if (connection.isOpen()) {
+                    return connection;
+                }
+            }
+            return ServerConnection.open(address, codec, backoff, message -> { });
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public void release(ServerConnection connection) {
+        if (closed || !connection.isOpen()) {
+            closeQuietly(connection);
+        } else {
+            idle.add(connection);
+        }
+        permits.release();
+    }
+
+    // после ошибки или таймаута в соединении может остаться чужой недочитанный ответ, такое не переиспользуем
+    public void discard(ServerConnection connection) {
+        closeQuietly(connection);
+        permits.release();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        ServerConnection connection;
+        while ((connection = idle.poll()) != null) {
+            closeQuietly(connection);
+        }
+    }
+
+    static void closeQuietly(ServerConnection connection) {
+        try {
+            connection.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package org.example.client;
+
+import org.example.network.Response;
+import org.example.network.codec.Codec;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+// клиент для программ, которые ходят на сервер из многих потоков сразу.
+// запросы выполняются на своих потоках, каждый на соединении из пула, так что друг друга не ждут
+public class ServerClient implements AutoCloseable {
+    private final ConnectionPool pool;
+    private final ExecutorService executor;
+    private final long defaultTimeoutMs;
+
+    public ServerClient(InetSocketAddress address, Codec codec, int maxConnections, long defaultTimeoutMs) {
+        this(address, codec, maxConnections, defaultTimeoutMs, new Backoff(100, 5_000, 5));
+    }
+
+    public ServerClient(InetSocketAddress address, Codec codec, int maxConnections, long defaultTimeoutMs,
+                        Backoff backoff) {
+        this.pool = new ConnectionPool(address, codec, backoff, maxConnections);
+        this.defaultTimeoutMs = defaultTimeoutMs;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(maxConnections, r -> {
+            Thread thread = new Thread(r, "server-client-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public CompletableFuture<Response> sendAsync(String commandName, Object arguments) {
+        return sendAsync(commandName, arguments, defaultTimeoutMs);
+    }
+
+    // таймаут считается с момента вызова, включая ожидание свободного соединения.
+    // по таймауту соединение закрывается: ответ на брошенный запрос все равно придет и только помешает следующим
+    public CompletableFuture<Response> sendAsync(String commandName, Object arguments, long timeoutMs) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        AtomicReference<ServerConnection> inUse = new AtomicReference<>();
+        executor.execute(() -> {
+            long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (future.isDone() || remainingMs <= 0) {
+                return; // истек, пока ждал своей очереди; future закроет orTimeout
+            }
+            ServerConnection connection;
+            try {
+                // ждем соединение только остаток таймаута, а не весь его заново
+                connection = pool.borrow(remainingMs);
+            } catch (IOException e) {
+                future.completeExceptionally(e);
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.completeExceptionally(e);
+                return;
+            }
+            if (future.isDone()) {
+                pool.release(connection); // пока ждали соединение, запрос уже истек
+                return;
+            }
+            inUse.set(connection);
+            try {
+                Response response = connection.call(commandName, arguments);
+                if (future.complete(response)) {
+                    pool.release(connection);
+                } else {
+                    pool.discard(connection);
+                }
+            } catch (IOException | RuntimeException e) {
+                pool.discard(connection);
+                future.completeExceptionally(e);
+            }
+        });
+        future.orTimeout(timeoutMs, TimeUnit.MILLISECONDS).whenComplete((response, error) -> {
+            if (error instanceof TimeoutException) {
+                ServerConnection connection = inUse.get();
+                if (connection != null) {
+                    ConnectionPool.closeQuietly(connection);
+                }
+            }
+        });
+        return future;
+    }
+
+    // то же самое, но с ожиданием ответа
+    public Response send(String commandName, Object arguments) throws IOException {
+        try {
+            return sendAsync(commandName, arguments).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof TimeoutException) {
+                throw new IOException("No response within " + defaultTimeoutMs + " ms.", cause);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        pool.close();
+    }
+}
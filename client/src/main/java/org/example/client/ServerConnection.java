@@ -0,0 +1,158 @@
+package org.example.client;
+
+import org.example.network.FrameOutputStream;
+import org.example.network.FrameReader;
+import org.example.network.Frames;
+import org.example.network.Request;
+import org.example.network.Response;
+import org.example.network.codec.Codec;
+import org.example.network.codec.Codecs;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// одно соединение с сервером. блокирующее и не потокобезопасное: пользоваться им должен один поток за раз
+public class ServerConnection implements AutoCloseable {
+    private final SocketChannel channel;
+    private final FrameReader frameReader = new FrameReader();
+    private final FrameOutputStream requestBuffer = new FrameOutputStream(); // запросы кодируются по одному
+    private final Codec codec;
+    private int lastRequestId;
+    // ответы, прочитанные раньше, чем их запросили - пока дочитывали курсор, сервер уже ответил на следующие
+    private final Map<Integer, ArrayDeque<Response>> early = new HashMap<>();
+
+    private ServerConnection(SocketChannel channel, Codec preferred) throws IOException {
+        this.channel = channel;
+        // сразу после подключения договариваемся о формате сообщений
+        Frames.writeFully(channel, Codecs.offerFrame(Codecs.preferenceFor(preferred)));
+        this.codec = Codecs.accepted(readFrame());
+    }
+
+    public static ServerConnection open(InetSocketAddress address, Codec preferred) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.connect(address);
+            return new ServerConnection(channel, preferred);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // подключается, пока не выйдут попытки; onFailure узнает о каждой неудачной
+    public static ServerConnection open(InetSocketAddress address, Codec preferred, Backoff backoff,
+                                        Consumer<String> onFailure) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return open(address, preferred);
+            } catch (IOException e) {
+                onFailure.accept("Failed to connect to server (attempt " + attempt + "/" + backoff.getMaxAttempts() + "): " + e.getMessage());
+                if (attempt >= backoff.getMaxAttempts()) {
+                    throw new IOException("Failed to connect to server after " + backoff.getMaxAttempts() + " attempts.", e);
+                }
+                try {
+                    TimeUnit.MILLISECONDS.sleep(backoff.delay(attempt));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Connection interrupted.", ie);
+                }
+            }
+        }
+    }
+
+    public Codec getCodec() {
+        return codec;
+    }
+
+    public boolean isOpen() {
+        return channel.isOpen() && channel.isConnected();
+    }
+
+    // отправляет запрос и сразу возвращается, ответ забирается по номеру через receive
+    public int send(String commandName, Object arguments) throws IOException {
+        if (!isOpen()) {
+            throw new IOException("Not connected to the server.");
+        }
+        // кодируем запрос сразу в кадр и отправляем целиком
+        int id = ++lastRequestId;
+        requestBuffer.reset();
+        codec.writeRequest(new Request(commandName, arguments, id), requestBuffer);
+        Frames.writeFully(channel, requestBuffer.toFrame());
+        return id;
+    }
+
+    // следующий кадр ответа на запрос id; чужие кадры, пришедшие раньше, откладываются до своей очереди
+    public Response receive(int id) throws IOException {
+        ArrayDeque<Response> queued = early.get(id);
+        if (queued != null) {
+            Response response = queued.poll();
+            if (queued.isEmpty()) {
+                early.remove(id);
+            }
+            return response;
+        }
+        while (true) {
+            Response response = codec.readResponse(readFrame());
+            if (response.getRequestId() == id) {
+                return response;
+            }
+            early.computeIfAbsent(response.getRequestId(), k -> new ArrayDeque<>()).add(response);
+        }
+    }
+
+    // запрос и весь ответ целиком: куски потока и курсора склеиваются в один список.
+    // для огромных выборок лучше просить страницами, иначе все окажется в памяти
+    public Response call(String commandName, Object arguments) throws IOException {
+        int id = send(commandName, arguments);
+        Response response = receive(id);
+        if (!response.isPartial() && response.getToken() == null) {
+            return response;
+        }
+        String message = response.getMessage();
+        List<Object> items = new ArrayList<>();
+        collect(items, response);
+        while (response.isPartial()) {
+            response = receive(id);
+            collect(items, response);
+        }
+        while (response.getToken() != null) {
+            response = receive(send("fetch", new String[]{response.getToken()}));
+            collect(items, response);
+        }
+        return new Response(message, items, false, null, id);
+    }
+
+    private static void collect(List<Object> items, Response response) {
+        if (response.getData() instanceof Collection) {
+            items.addAll((Collection<?>) response.getData());
+        } else if (response.getData() != null) {
+            items.add(response.getData());
+        }
+    }
+
+    // ответ может прийти кусками, читаем пока не соберется весь кадр
+    private ByteBuffer readFrame() throws IOException {
+        ByteBuffer frame;
+        while ((frame = frameReader.nextFrame()) == null) {
+            if (frameReader.readFrom(channel) == -1) {
+                throw new IOException("Server disconnected.");
+            }
+        }
+        return frame;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
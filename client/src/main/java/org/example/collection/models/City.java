@@ -0,0 +1,94 @@
+package org.example.collection.models;
+
+import org.example.exceptions.ValidationException;
+
+import java.io.Serializable;
+
+public class City implements Comparable<City>, Serializable {
+    private static final long serialVersionUID = 27381029L;
+
+    private Integer id;
+    private String name;
+    private Coordinates coordinates;
+    private Integer area;
+    private Long population;
+    private Float metersAboveSeaLevel;
+    private Climate climate;
+    private Government government;
+    private StandardOfLiving standardOfLiving;
+    private Human governor;
+    // готовые представления города: собираются при первом запросе и сбрасываются любым сеттером.
+    // coordinates и governor на месте не меняются, город получает новые через сеттер
+    private transient volatile String text;
+    private transient volatile byte[] encoded; // тело города в бинарном кодеке, без тега
+
+    // гетеро(ы) и сеттеры для всех полей
+    public Integer getId() { return id; }
+    public void setId(Integer id) { this.id = id; changed(); }
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; changed(); }
+    public Coordinates getCoordinates() { return coordinates; }
+    public void setCoordinates(Coordinates coordinates) { this.coordinates = coordinates; changed(); }
+    public Integer getArea() { return area; }
+    public void setArea(Integer area) { this.area = area; changed(); }
+    public Long getPopulation() { return population; }
+    public void setPopulation(Long population) { this.population = population; changed(); }
+    public Float getMetersAboveSeaLevel() { return metersAboveSeaLevel; }
+    public void setMetersAboveSeaLevel(Float metersAboveSeaLevel) { this.metersAboveSeaLevel = metersAboveSeaLevel; changed(); }
+    public Climate getClimate() { return climate; }
+    public void setClimate(Climate climate) { this.climate = climate; changed(); }
+    public Government getGovernment() { return government; }
+    public void setGovernment(Government government) { this.government = government; changed(); }
+    public StandardOfLiving getStandardOfLiving() { return standardOfLiving; }
+    public void setStandardOfLiving(StandardOfLiving standardOfLiving) { this.standardOfLiving = standardOfLiving; changed(); }
+    public Human getGovernor() { return governor; }
+    public void setGovernor(Human governor) { this.governor = governor; changed(); }
+
+    public byte[] getEncoded() { return encoded; }
+    public void setEncoded(byte[] encoded) { this.encoded = encoded; }
+
+    private void changed() {
+        text = null;
+        encoded = null;
+    }
+
+    // валидация объектовы
+    public void validate() throws ValidationException {
+        if (name == null || name.isEmpty()) throw new ValidationException("имя не по шаблону кабанчиком переделывать");
+        if (coordinates == null) throw new ValidationException("сказали ж нулевая точка запривачена там спавн");
+        if (area == null || area <= 0) throw new ValidationException("либо ты хочешь создать город с долгом по площади либо с его отсутствием, переделывай");
+        if (population == null || population <= 0) throw new ValidationException("в мире нет зомби апокалипсиса добавь хотяб 1 челика");
+        if (climate == null) throw new ValidationException("круто город без климата, отлично придумано!");
+        if (standardOfLiving == null) throw new ValidationException("может в твоей жизни все очень хреново но не значит что так должно быть у всех");
+    }
+
+    @Override
+    public int compareTo(City other) {
+        return this.population.compareTo(other.population);
+    }
+
+    @Override
+    public String toString() {
+        String cached = text;
+        if (cached == null) {
+            cached = buildText();
+            text = cached;
+        }
+        return cached;
+    }
+
+    private String buildText() {
+        return "City{" +
+                "id=" + id +
+                ", name='" + name + '\'' +
+                ", coordinates=" + coordinates +
+                ", area=" + area +
+                ", population=" + population +
+                ", metersAboveSeaLevel=" + metersAboveSeaLevel +
+                ", climate=" + climate +
+                ", government=" + government +
+                ", standardOfLiving=" + standardOfLiving +
+                ", governor=" + governor +
+                '}';
+    }
+}
@@ -0,0 +1,9 @@
+package org.example.collection.models;
+
+public enum Climate {
+    RAIN_FOREST,
+    HUMIDSUBTROPICAL,
+    HUMIDCONTINENTAL,
+    TUNDRA,
+    POLAR_ICECAP;
+}
\ No newline at end of file
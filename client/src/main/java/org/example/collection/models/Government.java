@@ -0,0 +1,8 @@
+package org.example.collection.models;
+
+public enum Government {
+    DESPOTISM,
+    NOOCRACY,
+    TECHNOCRACY,
+    TIMOCRACY;
+}
\ No newline at end of file
@@ -0,0 +1,29 @@
+package org.example.collection.models;
+
+import org.example.exceptions.ValidationException;
+
+import java.io.Serializable;
+
+public class Human implements Serializable {
+    private static final long serialVersionUID = 46205517L;
+
+    private String name; // Поле не может быть null, Строка не может быть пустой
+
+    public Human(String name) {
+        this.name = name;
+    }
+
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
+    public void validate() throws ValidationException {
+        if (name == null || name.isEmpty()) throw new ValidationException("неверное имя");
+    }
+
+    @Override
+    public String toString() {
+        return "Human{" +
+                "name='" + name + '\'' +
+                '}';
+    }
+}
\ No newline at end of file
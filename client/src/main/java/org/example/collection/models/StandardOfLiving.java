@@ -0,0 +1,9 @@
+package org.example.collection.models;
+
+public enum StandardOfLiving {
+    ULTRA_HIGH,
+    VERY_HIGH,
+    LOW,
+    VERY_LOW,
+    ULTRA_LOW;
+}
\ No newline at end of file
@@ -7,17 +7,20 @@ import org.example.exceptions.CommandExecutionError;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Scanner;
 
 public class ExecuteScript extends Command {
     private final Console console;
     private final CommandManager commandManager;
+    private final Pipeline pipeline; // серверные команды скрипта уходят пачкой, не дожидаясь ответов
 
-    public ExecuteScript(Console console, CommandManager commandManager) {
+    public ExecuteScript(Console console, CommandManager commandManager, Pipeline pipeline) {
         super("execute_script", "считать и выполнить скрипт из указанного файла");
         this.console = console;
         this.commandManager = commandManager;
+        this.pipeline = pipeline;
     }
 
     @Override
@@ -32,8 +35,10 @@ public class ExecuteScript extends Command {
         }
 
         try (Scanner scanner = new Scanner(scriptFile)) {
+            int lineNumber = 0;
             while (scanner.hasNextLine()) {
                 String line = scanner.nextLine().trim();
+                lineNumber++;
                 if (!line.isEmpty()) {
                     String[] parts = line.split("\\s+", 2);
                     String commandName = parts[0];
@@ -47,8 +52,18 @@ public class ExecuteScript extends Command {
                     Command command = commandManager.getCommand(commandName);
                     if (command != null) {
                         try {
-                            command.execute(commandArgs);
+                            if (pipeline.accepts(command)) {
+                                pipeline.submit(command, commandArgs);
+                            } else {
+                                pipeline.flush(); // локальная команда идет строго после ответов на предыдущие
+                                command.execute(commandArgs);
+                            }
                         } catch (CommandExecutionError e) {
+                            if (e.getCause() instanceof IOException) {
+                                // связь с сервером потеряна: дальше скрипт выполнять некуда, пусть клиент переподключается
+                                throw new CommandExecutionError("скрипт '" + args[0] + "' прерван на строке " + lineNumber
+                                        + " ('" + line + "'): " + e.getMessage(), e.getCause());
+                            }
                             console.writeln("ошибка при выполнении команды '" + commandName + "' из скрипта: " + e.getMessage());
                         }
                     } else {
@@ -56,7 +71,10 @@ public class ExecuteScript extends Command {
                     }
                 }
             }
+            pipeline.flush();
             console.writeln("выполнение скрипта '" + args[0] + "' завершено твои миллион городов загрузились в коллекцию!");
+        } catch (CommandExecutionError e) {
+            throw e;
         } catch (Exception e) {
             throw new CommandExecutionError("произошла ошибка при чтении или выполнении скрипта: " + e.getMessage());
         }
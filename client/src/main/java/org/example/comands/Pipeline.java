@@ -0,0 +1,13 @@
+package org.example.comands;
+
+import org.example.exceptions.CommandExecutionError;
+
+// отправка команд без ожидания ответа на каждую, ответы печатаются позже в порядке отправки
+public interface Pipeline {
+    boolean accepts(Command command);
+
+    void submit(Command command, String[] args) throws CommandExecutionError;
+
+    // дождаться и напечатать все, что еще в пути
+    void flush() throws CommandExecutionError;
+}
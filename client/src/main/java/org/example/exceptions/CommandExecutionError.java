@@ -8,4 +8,8 @@ public class CommandExecutionError extends Exception {
     public CommandExecutionError(String message) {
         super(message);
     }
+
+    public CommandExecutionError(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
@@ -0,0 +1,71 @@
+package org.example.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+// копит байты одного соединения и режет их на кадры, кадр может прийти за много read()
+public class FrameReader {
+    private static final int DEFAULT_CAPACITY = 8192;
+
+    private ByteBuffer buffer; // всегда в режиме записи
+    private int consumed; // сколько байт с начала буфера уже отдано наружу
+
+    public FrameReader() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public FrameReader(int initialCapacity) {
+        this.buffer = ByteBuffer.allocate(initialCapacity);
+    }
+
+    // одно чтение из канала, возвращает -1 если собеседник закрыл соединение.
+    // для неблокирующего канала селектор сам позовет еще раз, если в сокете что-то осталось
+    public int readFrom(ReadableByteChannel channel) throws IOException {
+        discardConsumed();
+        if (!buffer.hasRemaining()) {
+            grow(buffer.capacity() * 2);
+        }
+        return channel.read(buffer);
+    }
+
+    // следующий полный кадр или null, если он еще не докачался.
+    // возвращаемый буфер смотрит во внутренний массив и живет до следующего вызова readFrom/nextFrame
+    public ByteBuffer nextFrame() throws IOException {
+        discardConsumed();
+        if (buffer.position() < Frames.HEADER_SIZE) {
+            return null;
+        }
+        int length = buffer.getInt(0);
+        Frames.checkLength(length);
+        int frameSize = Frames.HEADER_SIZE + length;
+        if (buffer.position() < frameSize) {
+            if (buffer.capacity() < frameSize) {
+                grow(frameSize); // чтобы большой кадр не дочитывался по кусочку с удвоениями
+            }
+            return null;
+        }
+        ByteBuffer frame = buffer.duplicate();
+        frame.limit(frameSize).position(Frames.HEADER_SIZE);
+        consumed = frameSize;
+        return frame.slice();
+    }
+
+    private void discardConsumed() {
+        if (consumed == 0) {
+            return;
+        }
+        buffer.flip();
+        buffer.position(consumed);
+        buffer.compact(); // копируются только недочитанные хвосты, обычно ноль байт
+        consumed = 0;
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, buffer.capacity() * 2);
+        ByteBuffer bigger = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        bigger.put(buffer);
+        buffer = bigger;
+    }
+}
@@ -9,10 +9,16 @@ public class Request implements Serializable {
 
     private final String commandName;
     private final Object arguments;
+    private final int requestId; // номер запроса в соединении, сервер повторяет его в ответе
 
     public Request(String commandName, Object arguments) {
+        this(commandName, arguments, 0);
+    }
+
+    public Request(String commandName, Object arguments, int requestId) {
         this.commandName = commandName;
         this.arguments = arguments;
+        this.requestId = requestId;
     }
 
     public String getCommandName() {
@@ -23,6 +29,10 @@ public class Request implements Serializable {
         return arguments;
     }
 
+    public int getRequestId() {
+        return requestId;
+    }
+
     @Override
     public String toString() {
         String argsString;
@@ -36,7 +46,8 @@ public class Request implements Serializable {
             argsString = arguments.toString();
         }
         return "Request{" +
-                "commandName='" + commandName + '\'' +
+                "requestId=" + requestId +
+                ", commandName='" + commandName + '\'' +
                 ", arguments=" + argsString +
                 '}';
     }
@@ -0,0 +1,97 @@
+package org.example.network.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// читает то, что записал BinaryWriter, прямо из буфера кадра без копирования
+public class BinaryReader {
+    private final ByteBuffer buffer;
+
+    public BinaryReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public boolean hasRemaining() {
+        return buffer.hasRemaining();
+    }
+
+    public int remaining() {
+        return buffer.remaining();
+    }
+
+    public int readByte() throws IOException {
+        require(1);
+        return buffer.get() & 0xFF;
+    }
+
+    public byte[] readBytes() throws IOException {
+        int length = readVarInt();
+        require(length);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    public int readVarInt() throws IOException {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = readByte();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("слишком длинный varint");
+    }
+
+    public long readVarLong() throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("слишком длинный varint");
+    }
+
+    public int readSignedInt() throws IOException {
+        int raw = readVarInt();
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    public long readSignedLong() throws IOException {
+        long raw = readVarLong();
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    public float readFloat() throws IOException {
+        require(4);
+        return Float.intBitsToFloat(buffer.getInt());
+    }
+
+    public double readDouble() throws IOException {
+        require(8);
+        return Double.longBitsToDouble(buffer.getLong());
+    }
+
+    public String readString() throws IOException {
+        int length = readVarInt();
+        if (length == 0) {
+            return null;
+        }
+        length--;
+        require(length);
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private void require(int length) throws IOException {
+        if (length < 0 || buffer.remaining() < length) {
+            throw new IOException("сообщение обрезано: нужно " + length + " байт, осталось " + buffer.remaining());
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package org.example.network.codec;
+
+import org.example.network.Frames;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// растущий буфер с varint-ами и utf-8 без промежуточных массивов.
+// берется из пула кодека и переиспользуется между сообщениями
+public class BinaryWriter {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAX_RETAINED_CAPACITY = 1024 * 1024; // гигантский буфер после большого show не держим
+
+    private byte[] buf = new byte[INITIAL_CAPACITY];
+    private int count;
+    private int nextCapacity = INITIAL_CAPACITY; // буфер отдан вместе с кадром, следующий сразу такого размера
+
+    public void reset() {
+        if (buf == null) {
+            buf = new byte[nextCapacity];
+        } else if (buf.length > MAX_RETAINED_CAPACITY) {
+            buf = new byte[INITIAL_CAPACITY];
+        }
+        count = 0;
+    }
+
+    // сообщение пишется сразу после места под длину кадра, потом takeFrame отдает буфер как есть
+    public void beginFrame() {
+        reset();
+        count = Frames.HEADER_SIZE;
+    }
+
+    // кадр поверх буфера, без копирования. буфер уходит вместе с кадром, писатель дальше пишет в новый
+    public ByteBuffer takeFrame() throws IOException {
+        int length = count - Frames.HEADER_SIZE;
+        Frames.checkLength(length);
+        ByteBuffer frame = ByteBuffer.wrap(buf, 0, count);
+        frame.putInt(0, length);
+        nextCapacity = Math.min(Math.max(count, INITIAL_CAPACITY), MAX_RETAINED_CAPACITY);
+        buf = null;
+        count = 0;
+        return frame;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buf, 0, count);
+    }
+
+    // байты как есть, без длины
+    public void writeRaw(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buf, count, bytes.length);
+        count += bytes.length;
+    }
+
+    public byte[] copyOfRange(int from, int to) {
+        return Arrays.copyOfRange(buf, from, to);
+    }
+
+    public void writeByte(int value) {
+        ensureCapacity(1);
+        buf[count++] = (byte) value;
+    }
+
+    public void writeBytes(byte[] bytes) {
+        writeVarInt(bytes.length);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buf, count, bytes.length);
+        count += bytes.length;
+    }
+
+    public void writeVarInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            buf[count++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[count++] = (byte) value;
+    }
+
+    public void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buf[count++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[count++] = (byte) value;
+    }
+
+    // zigzag чтобы маленькие отрицательные числа тоже занимали пару байт
+    public void writeSignedInt(int value) {
+        writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    public void writeSignedLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    public void writeFloat(float value) {
+        writeFixedInt(Float.floatToIntBits(value));
+    }
+
+    public void writeDouble(double value) {
+        long bits = Double.doubleToLongBits(value);
+        writeFixedInt((int) (bits >>> 32));
+        writeFixedInt((int) bits);
+    }
+
+    // строка: длина в байтах + 1 (ноль значит null), затем utf-8
+    public void writeString(String value) {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+        int length = value.length();
+        int utfLength = utf8Length(value);
+        writeVarInt(utfLength + 1);
+        ensureCapacity(utfLength);
+        int i = 0;
+        for (; i < length; i++) { // быстрый путь для ascii
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                break;
+            }
+            buf[count++] = (byte) c;
+        }
+        for (; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buf[count++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[count++] = (byte) (0xC0 | (c >> 6));
+                buf[count++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buf[count++] = (byte) (0xF0 | (codePoint >> 18));
+                buf[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buf[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buf[count++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else {
+                if (Character.isSurrogate(c)) {
+                    c = '?'; // одинокий суррогат, как String.getBytes
+                    buf[count++] = (byte) c;
+                    continue;
+                }
+                buf[count++] = (byte) (0xE0 | (c >> 12));
+                buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[count++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void writeFixedInt(int value) {
+        ensureCapacity(4);
+        buf[count++] = (byte) (value >>> 24);
+        buf[count++] = (byte) (value >>> 16);
+        buf[count++] = (byte) (value >>> 8);
+        buf[count++] = (byte) value;
+    }
+
+    private static int utf8Length(String value) {
+        int length = value.length();
+        int utfLength = length;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x800) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    utfLength += 2; // 4 байта на пару из двух char
+                    i++;
+                } else if (!Character.isSurrogate(c)) {
+                    utfLength += 2;
+                }
+            } else if (c >= 0x80) {
+                utfLength += 1;
+            }
+        }
+        return utfLength;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (count + extra > buf.length) {
+            byte[] bigger = new byte[Math.max(buf.length * 2, count + extra)];
+            System.arraycopy(buf, 0, bigger, 0, count);
+            buf = bigger;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.example.network.codec;
+
+import org.example.network.FrameOutputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+// реестр кодеков и рукопожатие при подключении:
+// клиент первым кадром шлет [кол-во][id...] в порядке предпочтения, сервер отвечает кадром [id] того, что выбрал
+public final class Codecs {
+    public static final Codec BINARY = new BinaryCodec();
+    public static final Codec SERIALIZATION = new SerializationCodec();
+
+    private static final List<Codec> SUPPORTED = List.of(BINARY, SERIALIZATION);
+
+    private Codecs() {
+    }
+
+    public static Codec forId(int id) {
+        for (Codec codec : SUPPORTED) {
+            if (codec.getId() == id) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    public static Codec forName(String name) {
+        for (Codec codec : SUPPORTED) {
+            if (codec.getName().equalsIgnoreCase(name)) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("неизвестный кодек: " + name);
+    }
+
+    // что предлагает клиент: сначала любимый, потом все остальные, сериализация всегда в конце как запасной
+    public static List<Codec> preferenceFor(Codec preferred) {
+        List<Codec> offer = new ArrayList<>();
+        offer.add(preferred);
+        for (Codec codec : SUPPORTED) {
+            if (codec != preferred && codec != SERIALIZATION) {
+                offer.add(codec);
+            }
+        }
+        if (preferred != SERIALIZATION) {
+            offer.add(SERIALIZATION);
+        }
+        return offer;
+    }
+
+    public static ByteBuffer offerFrame(List<Codec> offer) throws IOException {
+        FrameOutputStream out = new FrameOutputStream(16);
+        out.write(offer.size());
+        for (Codec codec : offer) {
+            out.write(codec.getId());
+        }
+        return out.toFrame();
+    }
+
+    // сервер берет первый знакомый из предложенного, если общего нет - сериализацию
+    public static Codec choose(ByteBuffer offerPayload) throws IOException {
+        if (!offerPayload.hasRemaining()) {
+            throw new IOException("пустое предложение кодеков");
+        }
+        int count = offerPayload.get() & 0xFF;
+        for (int i = 0; i < count && offerPayload.hasRemaining(); i++) {
+            Codec codec = forId(offerPayload.get());
+            if (codec != null) {
+                return codec;
+            }
+        }
+        return SERIALIZATION;
+    }
+
+    public static ByteBuffer acceptFrame(Codec codec) throws IOException {
+        FrameOutputStream out = new FrameOutputStream(8);
+        out.write(codec.getId());
+        return out.toFrame();
+    }
+
+    public static Codec accepted(ByteBuffer acceptPayload) throws IOException {
+        if (!acceptPayload.hasRemaining()) {
+            throw new IOException("сервер не ответил на рукопожатие");
+        }
+        Codec codec = forId(acceptPayload.get());
+        if (codec == null) {
+            throw new IOException("сервер выбрал неизвестный кодек");
+        }
+        return codec;
+    }
+}
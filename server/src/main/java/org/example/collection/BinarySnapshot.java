@@ -0,0 +1,294 @@
+package org.example.collection;
+
+import org.example.collection.exceptions.ValidationException;
+import org.example.collection.models.City;
+import org.example.collection.models.Climate;
+import org.example.collection.models.Coordinates;
+import org.example.collection.models.Government;
+import org.example.collection.models.Human;
+import org.example.collection.models.StandardOfLiving;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// двоичный снимок коллекции: заголовок, записи городов фиксированной длины, таблица строк.
+// имена, губернаторы и названия значений перечислений лежат в таблице один раз, в записи - номер строки.
+// читается через отображение файла в память, без разбора текста, поэтому старт на больших файлах быстрый
+//
+// заголовок: magic, версия, длина записи, число городов, число строк, смещение таблицы строк (long)
+// запись: маска присутствия полей (short), id, имя, x, y, площадь, население, высота, климат, правление, уровень жизни, губернатор
+// таблица строк: для каждой длина в байтах (int) и utf-8
+public class BinarySnapshot {
+    public static final String EXTENSION = ".bin";
+
+    private static final int MAGIC = 0x43495459; // "CITY"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 4 + 8;
+    private static final int RECORD_SIZE = 2 + 4 + 4 + 4 + 8 + 4 + 8 + 4 + 4 + 4 + 4 + 4;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+    // одно отображение не может быть больше 2 гб, записи отображаем окнами по целому числу записей
+    private static final int RECORDS_PER_WINDOW = Integer.MAX_VALUE / RECORD_SIZE;
+
+    private static final int HAS_ID = 1;
+    private static final int HAS_NAME = 1 << 1;
+    private static final int HAS_X = 1 << 2;
+    private static final int HAS_Y = 1 << 3;
+    private static final int HAS_COORDINATES = 1 << 4;
+    private static final int HAS_AREA = 1 << 5;
+    private static final int HAS_POPULATION = 1 << 6;
+    private static final int HAS_METERS = 1 << 7;
+    private static final int HAS_CLIMATE = 1 << 8;
+    private static final int HAS_GOVERNMENT = 1 << 9;
+    private static final int HAS_STANDARD = 1 << 10;
+    private static final int HAS_GOVERNOR = 1 << 11;
+
+    private BinarySnapshot() {
+    }
+
+    public static boolean isBinary(Path path) {
+        return path.getFileName().toString().endsWith(EXTENSION);
+    }
+
+    // два прохода: сначала собираем таблицу строк, потом пишем записи и саму таблицу
+    public static void write(Iterable<City> cities, Path target) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        int count = 0;
+        for (City city : cities) {
+            intern(strings, city.getName());
+            intern(strings, city.getGovernor() == null ? null : city.getGovernor().getName());
+            intern(strings, name(city.getClimate()));
+            intern(strings, name(city.getGovernment()));
+            intern(strings, name(city.getStandardOfLiving()));
+            count++;
+        }
+        int cityCount = count;
+        DumpManager.replaceAtomically(target, channel -> {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putInt(cityCount).putInt(strings.size())
+                    .putLong(HEADER_SIZE + (long) cityCount * RECORD_SIZE);
+            int written = 0;
+            for (City city : cities) {
+                if (buffer.remaining() < RECORD_SIZE) {
+                    drain(channel, buffer);
+                }
+                writeRecord(buffer, city, strings);
+                written++;
+            }
+            if (written != cityCount) {
+                throw new IOException("коллекция изменилась во время записи снимка");
+            }
+            for (String string : strings.keySet()) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                if (buffer.remaining() < 4) {
+                    drain(channel, buffer);
+                }
+                buffer.putInt(bytes.length);
+                int offset = 0;
+                while (offset < bytes.length) {
+                    if (!buffer.hasRemaining()) {
+                        drain(channel, buffer);
+                    }
+                    int chunk = Math.min(buffer.remaining(), bytes.length - offset);
+                    buffer.put(bytes, offset, chunk);
+                    offset += chunk;
+                }
+            }
+            drain(channel, buffer);
+        });
+    }
+
+    public static int read(Path path, DumpManager.CityHandler handler) throws IOException, ValidationException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize == 0) {
+                System.out.println("файл пустой введи insert чтобы добавить новый город");
+                return 0;
+            }
+            if (fileSize < HEADER_SIZE) {
+                throw new IOException("файл слишком короткий для снимка: " + fileSize + " байт");
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("это не двоичный снимок коллекции");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("неподдерживаемая версия снимка: " + version);
+            }
+            int recordSize = header.getInt();
+            int cityCount = header.getInt();
+            int stringCount = header.getInt();
+            long stringTableOffset = header.getLong();
+            if (recordSize != RECORD_SIZE || cityCount < 0 || stringCount < 0
+                    || stringTableOffset != HEADER_SIZE + (long) cityCount * RECORD_SIZE || stringTableOffset > fileSize) {
+                throw new IOException("заголовок снимка поврежден");
+            }
+
+            StringTable table = readStrings(channel, stringTableOffset, fileSize - stringTableOffset, stringCount);
+            for (int first = 0; first < cityCount; first += RECORDS_PER_WINDOW) {
+                int inWindow = Math.min(RECORDS_PER_WINDOW, cityCount - first);
+                MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_SIZE + (long) first * RECORD_SIZE, (long) inWindow * RECORD_SIZE);
+                for (int i = 0; i < inWindow; i++) {
+                    int index = first + i;
+                    City city;
+                    try {
+                        city = readRecord(records, table);
+                    } catch (IOException e) {
+                        throw new IOException("ошибка в городе #" + index + ": " + e.getMessage(), e);
+                    }
+                    handler.accept(index, city);
+                    if ((index + 1) % DumpManager.PROGRESS_STEP == 0) {
+                        System.out.printf("загружено городов: %d (%d%%)%n", index + 1, (long) (index + 1) * 100 / cityCount);
+                    }
+                }
+            }
+            return cityCount;
+        }
+    }
+
+    private static void writeRecord(ByteBuffer buffer, City city, Map<String, Integer> strings) {
+        Coordinates coordinates = city.getCoordinates();
+        Human governor = city.getGovernor();
+        int mask = (city.getId() != null ? HAS_ID : 0)
+                | (city.getName() != null ? HAS_NAME : 0)
+                | (coordinates != null ? HAS_COORDINATES : 0)
+                | (coordinates != null && coordinates.getX() != null ? HAS_X : 0)
+                | (coordinates != null && coordinates.getY() != null ? HAS_Y : 0)
+                | (city.getArea() != null ? HAS_AREA : 0)
+                | (city.getPopulation() != null ? HAS_POPULATION : 0)
+                | (city.getMetersAboveSeaLevel() != null ? HAS_METERS : 0)
+                | (city.getClimate() != null ? HAS_CLIMATE : 0)
+                | (city.getGovernment() != null ? HAS_GOVERNMENT : 0)
+                | (city.getStandardOfLiving() != null ? HAS_STANDARD : 0)
+                | (governor != null && governor.getName() != null ? HAS_GOVERNOR : 0);
+        buffer.putShort((short) mask);
+        buffer.putInt((mask & HAS_ID) != 0 ? city.getId() : 0);
+        buffer.putInt(ref(strings, city.getName()));
+        buffer.putInt((mask & HAS_X) != 0 ? coordinates.getX() : 0);
+        buffer.putLong((mask & HAS_Y) != 0 ? coordinates.getY() : 0);
+        buffer.putInt((mask & HAS_AREA) != 0 ? city.getArea() : 0);
+        buffer.putLong((mask & HAS_POPULATION) != 0 ? city.getPopulation() : 0);
+        buffer.putFloat((mask & HAS_METERS) != 0 ? city.getMetersAboveSeaLevel() : 0);
+        buffer.putInt(ref(strings, name(city.getClimate())));
+        buffer.putInt(ref(strings, name(city.getGovernment())));
+        buffer.putInt(ref(strings, name(city.getStandardOfLiving())));
+        buffer.putInt(ref(strings, (mask & HAS_GOVERNOR) != 0 ? governor.getName() : null));
+    }
+
+    private static City readRecord(ByteBuffer buffer, StringTable table) throws IOException {
+        int mask = buffer.getShort() & 0xFFFF;
+        int id = buffer.getInt();
+        int name = buffer.getInt();
+        int x = buffer.getInt();
+        long y = buffer.getLong();
+        int area = buffer.getInt();
+        long population = buffer.getLong();
+        float meters = buffer.getFloat();
+        int climate = buffer.getInt();
+        int government = buffer.getInt();
+        int standard = buffer.getInt();
+        int governor = buffer.getInt();
+
+        City city = new City();
+        if ((mask & HAS_ID) != 0) city.setId(id);
+        if ((mask & HAS_NAME) != 0) city.setName(table.string(name));
+        if ((mask & HAS_COORDINATES) != 0) {
+            city.setCoordinates(new Coordinates((mask & HAS_X) != 0 ? x : null, (mask & HAS_Y) != 0 ? y : null));
+        }
+        if ((mask & HAS_AREA) != 0) city.setArea(area);
+        if ((mask & HAS_POPULATION) != 0) city.setPopulation(population);
+        if ((mask & HAS_METERS) != 0) city.setMetersAboveSeaLevel(meters);
+        if ((mask & HAS_CLIMATE) != 0) city.setClimate(table.constant(climate, Climate.class));
+        if ((mask & HAS_GOVERNMENT) != 0) city.setGovernment(table.constant(government, Government.class));
+        if ((mask & HAS_STANDARD) != 0) city.setStandardOfLiving(table.constant(standard, StandardOfLiving.class));
+        if ((mask & HAS_GOVERNOR) != 0) city.setGovernor(new Human(table.string(governor)));
+        return city;
+    }
+
+    private static StringTable readStrings(FileChannel channel, long offset, long length, int count) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("таблица строк больше 2 гб");
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        String[] strings = new String[count];
+        byte[] bytes = new byte[64];
+        for (int i = 0; i < count; i++) {
+            if (buffer.remaining() < 4) {
+                throw new IOException("таблица строк обрывается на строке #" + i);
+            }
+            int size = buffer.getInt();
+            if (size < 0 || size > buffer.remaining()) {
+                throw new IOException("некорректная длина строки #" + i + ": " + size);
+            }
+            if (size > bytes.length) {
+                bytes = new byte[Math.max(size, bytes.length * 2)];
+            }
+            buffer.get(bytes, 0, size);
+            strings[i] = new String(bytes, 0, size, StandardCharsets.UTF_8);
+        }
+        return new StringTable(strings);
+    }
+
+    private static void intern(Map<String, Integer> strings, String string) {
+        if (string != null) {
+            strings.putIfAbsent(string, strings.size());
+        }
+    }
+
+    private static int ref(Map<String, Integer> strings, String string) {
+        return string == null ? -1 : strings.get(string);
+    }
+
+    private static String name(Enum<?> value) {
+        return value == null ? null : value.name();
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // строки снимка; значения перечислений по номеру строки ищутся один раз и запоминаются
+    private static class StringTable {
+        private final String[] strings;
+        private final Map<Integer, Enum<?>> constants = new HashMap<>();
+
+        StringTable(String[] strings) {
+            this.strings = strings;
+        }
+
+        String string(int index) throws IOException {
+            if (index < 0 || index >= strings.length) {
+                throw new IOException("ссылка на несуществующую строку " + index);
+            }
+            return strings[index];
+        }
+
+        <E extends Enum<E>> E constant(int index, Class<E> type) throws IOException {
+            Enum<?> cached = constants.get(index);
+            if (cached != null && type.isInstance(cached)) {
+                return type.cast(cached);
+            }
+            String name = string(index);
+            try {
+                E value = Enum.valueOf(type, name);
+                constants.put(index, value);
+                return value;
+            } catch (IllegalArgumentException e) {
+                throw new IOException("нет значения " + name + " в " + type.getSimpleName());
+            }
+        }
+    }
+}
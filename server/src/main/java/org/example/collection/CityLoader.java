@@ -0,0 +1,121 @@
+package org.example.collection;
+
+import org.example.collection.exceptions.ValidationException;
+import org.example.collection.models.City;
+import org.example.collection.store.CityStore;
+import org.example.utils.IdGenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+// начальная загрузка: разбор файла идет в одном потоке, а города пачками уходят в fork-join пул,
+// где проверяются и вставляются в хранилище и индексы параллельно - это и есть самая дорогая часть.
+// если ошибок несколько, наружу выходит та, что раньше всех в файле.
+// повторный id: как и раньше, побеждает город, что стоит в файле позже; в строгом режиме это ошибка
+public class CityLoader implements DumpManager.CityHandler {
+    private static final int BATCH_SIZE = 4096;
+
+    private final CityStore store;
+    private final IdGenerator idGenerator;
+    private final ForkJoinPool pool;
+    private final boolean strict;
+    // id -> самый поздний номер в файле среди городов с этим id
+    private final Map<Integer, Integer> positions = new ConcurrentHashMap<>();
+    private final LongAdder duplicates = new LongAdder();
+    private final List<CompletableFuture<Void>> tasks = new ArrayList<>();
+    private final Map<Integer, ValidationException> failures = new ConcurrentSkipListMap<>();
+    private List<City> batch = new ArrayList<>(BATCH_SIZE);
+    private int batchStart;
+
+    public CityLoader(CityStore store, IdGenerator idGenerator, ForkJoinPool pool, boolean strict) {
+        this.store = store;
+        this.idGenerator = idGenerator;
+        this.pool = pool;
+        this.strict = strict;
+    }
+
+    @Override
+    public void accept(int index, City city) {
+        if (batch.isEmpty()) {
+            batchStart = index;
+        }
+        batch.add(city);
+        if (batch.size() == BATCH_SIZE) {
+            submit();
+        }
+    }
+
+    // дождаться всех пачек; возвращает сколько городов вставлено
+    public int finish() throws ValidationException {
+        if (!batch.isEmpty()) {
+            submit();
+        }
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+        tasks.clear();
+        positions.clear();
+        if (!failures.isEmpty()) {
+            throw failures.values().iterator().next();
+        }
+        if (duplicates.sum() > 0) {
+            System.err.println("в файле повторяются id, отброшено городов: " + duplicates.sum() + ", остались те, что ниже по файлу");
+        }
+        return store.size();
+    }
+
+    private void submit() {
+        List<City> cities = batch;
+        int start = batchStart;
+        batch = new ArrayList<>(BATCH_SIZE);
+        tasks.add(CompletableFuture.runAsync(() -> insert(start, cities), pool));
+    }
+
+    private void insert(int start, List<City> cities) {
+        if (!failures.isEmpty()) {
+            return; // загрузка уже провалилась, дальше вставлять незачем
+        }
+        int maxId = 0;
+        for (int i = 0; i < cities.size(); i++) {
+            City city = cities.get(i);
+            int index = start + i;
+            try {
+                if (city.getId() == null || city.getId() <= 0) {
+                    throw new ValidationException("id должен быть положительным");
+                }
+                city.validate();
+                if (!load(city, index)) {
+                    if (strict) {
+                        throw new ValidationException("такой id уже есть в файле");
+                    }
+                    duplicates.increment();
+                }
+            } catch (ValidationException e) {
+                failures.put(index, new ValidationException("город #" + index + " (id " + city.getId() + "): " + e.getMessage()));
+                return;
+            }
+            maxId = Math.max(maxId, city.getId());
+        }
+        if (maxId > 0) {
+            idGenerator.setNextId(maxId + 1);
+        }
+    }
+
+    // кто позже в файле, тот и остается: сначала атомарно застолбили свой номер, и вставка заменит
+    // уже лежащий город, только если номер все еще наш. false - id в файле уже встречался
+    private boolean load(City city, int index) {
+        Integer id = city.getId();
+        if (strict) {
+            return positions.putIfAbsent(id, index) == null && store.load(id, city, (old, candidate) -> false);
+        }
+        int winner = positions.merge(id, index, Math::max);
+        if (winner != index) {
+            return false;
+        }
+        return store.load(id, city, (old, candidate) -> positions.get(id) == index);
+    }
+}
@@ -3,49 +3,147 @@ package org.example.collection;
 import org.example.collection.exceptions.ValidationException;
 import org.example.collection.models.City;
 import org.example.collection.models.StandardOfLiving;
+import org.example.collection.store.AggregateIndex;
+import org.example.collection.store.CityCategory;
+import org.example.collection.store.CitySnapshot;
+import org.example.collection.store.CityStore;
+import org.example.collection.store.EnumIndex;
+import org.example.collection.store.Journal;
+import org.example.collection.store.KeyIndex;
+import org.example.collection.store.SnapshotIndex;
 import org.example.utils.IdGenerator;
+import org.example.utils.Iterators;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 public class CollectionManager {
-    private final Hashtable<Integer, City> collection = new Hashtable<>();
+    private final CityStore store = new CityStore();
+    private final KeyIndex keyIndex = store.addIndex(new KeyIndex());
+    private final AggregateIndex aggregates = store.addIndex(new AggregateIndex());
+    private final SnapshotIndex snapshots = store.addIndex(new SnapshotIndex());
+    // подсчет и выборка по полям-перечислениям идут по снимку, корзины нужны только для удаления по уровню жизни
+    private final EnumIndex standardIndex = store.addIndex(new EnumIndex(CityCategory.STANDARD_OF_LIVING));
     private final IdGenerator idGenerator = new IdGenerator();
     private String saveFilePath;
-    private final ExecutorService saveExecutor = Executors.newSingleThreadExecutor(); // Один поток для сохранения
+    private final SyncPolicy syncPolicy;
+    private final long syncIntervalMs;
+    private final SaveScheduler saveScheduler; // один поток для сохранения, пачки изменений схлопываются в одну запись
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private MutationLog mutationLog;
+    private volatile boolean prettyPrint = true; // с отступами файл читать удобнее, без них он заметно меньше и пишется быстрее
+    private volatile boolean aggregateSelfCheck; // пересчитывать агрегаты по всей коллекции и сверять при каждом чтении
+    private boolean strictLoad; // повторный id в файле - ошибка загрузки, а не замена городом ниже по файлу
+
+    public CollectionManager() {
+        this(SyncPolicy.INTERVAL, 100, 60_000, 10_000);
+    }
+
+    public CollectionManager(SyncPolicy syncPolicy, long syncIntervalMs, long maxSaveDelayMs, int maxPendingMutations) {
+        this.syncPolicy = syncPolicy;
+        this.syncIntervalMs = syncIntervalMs;
+        this.saveScheduler = new SaveScheduler(this::compact, maxSaveDelayMs, maxPendingMutations);
+    }
 
     public void loadCollection(String filePath) throws IOException, ValidationException {
         this.saveFilePath = filePath;
-        List<City> cities = DumpManager.jsonFileToCityList(filePath);
-
-        collection.clear();
+        store.setJournal(Journal.NONE);
+        store.clear();
         idGenerator.setNextId(1);
 
-        for (City city : cities) {
-            city.validate();
-            collection.put(city.getId(), city);
+        CityLoader loader = new CityLoader(store, idGenerator, ForkJoinPool.commonPool(), strictLoad);
+        snapshots.pause();
+        DumpManager.readCities(filePath, loader);
+        int loaded = loader.finish();
+        snapshots.resume(store.entries());
+        System.out.println("загружено городов: " + loaded);
+
+        // снимок мог отстать от журнала: сначала недоделанная прошлая компакция, потом текущий журнал
+        Path logPath = walPath(filePath);
+        int replayed = MutationLog.replay(MutationLog.rotatedPath(logPath), this::apply)
+                + MutationLog.replay(logPath, this::apply);
+        if (replayed > 0) {
+            System.out.println("из журнала изменений восстановлено записей: " + replayed);
+        }
+        mutationLog = new MutationLog(logPath, syncPolicy, syncIntervalMs);
+        store.setJournal(this::log);
+        // снимок переписываем, только если журнал что-то добавил к нему, иначе на диске и так то же самое
+        if (replayed > 0) {
+            asyncSave();
+        }
+    }
+
+    private static Path walPath(String filePath) {
+        return Path.of(filePath + ".wal");
+    }
+
+    // повтор записи журнала при загрузке, все операции идемпотентны
+    private void apply(Mutation mutation) {
+        store.apply(mutation);
+        City city = mutation.getCity();
+        if (city != null && city.getId() != null && city.getId() > 0) {
             idGenerator.setNextId(city.getId() + 1);
         }
-        asyncSave();
+    }
+
+    // O(1) на изменение: дописываем в журнал, а полный снимок пишет планировщик, когда изменений накопится
+    private void log(Mutation mutation) throws IOException {
+        if (mutationLog == null) {
+            return;
+        }
+        mutationLog.append(mutation);
+        saveScheduler.markDirty();
     }
 
     private void asyncSave() {
         if (saveFilePath != null) {
-            saveExecutor.submit(() -> {
-                try {
-                    DumpManager.CollectionToJsonFile(new ArrayList<>(collection.values()), saveFilePath);
-                } catch (IOException e) {
-                    System.err.println("ошибка при асинхронном сохранении: " + e.getMessage());
-                }
-            });
+            saveScheduler.saveSoon();
+        }
+    }
+
+    // компакция: журнал уезжает в .old, с коллекции снимается копия, снимок пишется и только потом .old удаляется
+    private void compact() throws IOException {
+        if (saveFilePath == null || mutationLog == null) {
+            return;
         }
+        // изменения стоят только на время ротации: снимок берется за O(1) и пишется уже без блокировки,
+        // при этом в нем ровно то, что было до ротации, и новый журнал продолжает его
+        Path[] rotated = new Path[1];
+        CitySnapshot snapshot = store.exclusive(() -> {
+            try {
+                rotated[0] = mutationLog.rotate();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return snapshots.snapshot();
+        });
+        DumpManager.writeCities(snapshot, saveFilePath, prettyPrint);
+        Files.deleteIfExists(rotated[0]);
     }
 
+    // при остановке сервера: дописываем снимок, дожидаемся записи и закрываем журнал. повторный вызов ничего не делает
     public void shutdownSaveExecutor() {
-        saveExecutor.shutdown();
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            saveScheduler.close(30_000);
+        } catch (IOException e) {
+            System.err.println("снимок при остановке не записан, изменения остались в журнале: " + e.getMessage());
+        }
+        if (mutationLog != null) {
+            try {
+                mutationLog.close();
+            } catch (IOException e) {
+                System.err.println("ошибка при закрытии журнала изменений: " + e.getMessage());
+            }
+        }
     }
 
     public void addElement(Integer key, City city) throws ValidationException, IOException {
@@ -55,118 +153,181 @@ public class CollectionManager {
         city.validate();
 
         int actualKey = (key != null) ? key : newId;
-        collection.put(actualKey, city);
-        asyncSave(); 
+        store.insert(actualKey, city);
     }
 
+    // проверка ключа и замена одной атомарной операцией, без гонки между containsKey и put
     public boolean update(Integer key, City newCity) throws ValidationException, IOException {
-        if (!collection.containsKey(key)) {
-            return false;
-        }
-
-        City oldCity = collection.get(key);
-        newCity.setId(oldCity.getId());
-        collection.put(key, newCity);
-        asyncSave(); 
-        return true;
+        return store.update(key, oldCity -> {
+            newCity.setId(oldCity.getId());
+            return newCity;
+        });
     }
 
     public boolean remove(Integer key) throws IOException {
-        boolean removed = collection.remove(key) != null;
-        if (removed) {
-            asyncSave(); 
-        }
-        return removed;
+        return store.remove(key);
     }
 
+    // по отсортированным ключам идем только по удаляемым, а не по всей коллекции
     public int removeGreaterKey(Integer key) throws IOException {
-        int initialSize = collection.size();
-        collection.keySet().removeIf(k -> k > key);
-        int removed = initialSize - collection.size();
-        if (removed > 0) {
-            asyncSave(); 
-        }
-        return removed;
+        return store.removeKeys(keyIndex.greaterThan(key));
     }
 
     public int removeLowerKey(Integer key) throws IOException {
-        int initialSize = collection.size();
-        collection.keySet().removeIf(k -> k < key);
-        int removed = initialSize - collection.size();
-        if (removed > 0) {
-            asyncSave(); 
-        }
-        return removed;
+        return store.removeKeys(keyIndex.lowerThan(key));
+    }
+
+    // города с ключами от from до to включительно, в порядке ключей; по снимку на момент вызова
+    public Iterator<City> getByKeyRange(int from, int to) {
+        return snapshots.snapshot().keyRange(from, to);
     }
 
+    // только по корзине этого уровня жизни, остальные города не трогаем
     public int removeAllByStandardOfLiving(StandardOfLiving standard) throws IOException {
-        int initialSize = collection.size();
-        collection.values().removeIf(city -> standard.equals(city.getStandardOfLiving()));
-        int removed = initialSize - collection.size();
-        if (removed > 0) {
-            asyncSave(); 
-        }
-        return removed;
+        return store.removeKeys(standardIndex.keysOf(standard),
+                (k, city) -> standard.equals(city.getStandardOfLiving()));
+    }
+
+    public Map<Enum<?>, Integer> countByCategory(CityCategory category) {
+        return snapshots.snapshot().counts(category);
+    }
+
+    public Iterator<City> filterByCategory(CityCategory category, Enum<?> value) {
+        return snapshots.snapshot().withCategory(category, value);
     }
 
     public void clearCollection() throws IOException {
-        collection.clear();
-        asyncSave(); 
+        store.clear();
     }
 
     public boolean replaceIfGreater(Integer key, City newCity) throws ValidationException, IOException {
-        if (!collection.containsKey(key)) {
-            return false;
-        }
-
-        City oldCity = collection.get(key);
-        if (newCity.getPopulation() > oldCity.getPopulation()) {
+        newCity.validate();
+        // сравнение и замена идут внутри compute, так что между ними никто не влезет
+        return store.update(key, oldCity -> {
+            if (newCity.getPopulation() <= oldCity.getPopulation()) {
+                return null;
+            }
             newCity.setId(oldCity.getId());
-            newCity.validate();
-            collection.put(key, newCity);
-            asyncSave(); 
-            return true;
+            return newCity;
+        });
+    }
+
+    // пачка изменений под одним exclusive: чужие изменения ждут, пока она не доиграет до конца,
+    // а в журнал вся пачка уходит одной записью. не записалась - коллекция откатывается к снимку до пачки,
+    // так что подтвердить изменение, которого после перезапуска не будет, нельзя
+    public <T> T batch(Supplier<T> action) throws IOException {
+        try {
+            return store.exclusive(() -> {
+                MutationLog log = mutationLog;
+                if (log == null) {
+                    return action.get();
+                }
+                CitySnapshot before = snapshots.snapshot();
+                log.beginGroup();
+                try {
+                    return action.get();
+                } finally {
+                    try {
+                        log.commitGroup();
+                    } catch (IOException e) {
+                        store.restore(before);
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
-        return false;
     }
 
+    // размер, версия и агрегаты берутся из одного состояния коллекции, без изменения посередине
     public String getCollectionInfo() {
-        return String.format(
-                "тип: %s\nразмер: %d\nфайл сохранения: %s",
-                collection.getClass().getName(),
-                collection.size(),
-                saveFilePath != null ? saveFilePath : "не указан"
-        );
+        checkAggregates();
+        return store.consistentRead(() -> String.format(
+                "тип: %s\nразмер: %d\nверсия: %d\nфайл сохранения: %s\nсохранение: %s\n%s",
+                store.describe(),
+                store.size(),
+                snapshots.snapshot().version(),
+                saveFilePath != null ? saveFilePath : "не указан",
+                saveScheduler.getStats(),
+                aggregates.describe()
+        ));
+    }
+
+    // читатели ниже берут снимок на момент вызова: пока ответ дочитывают, параллельные изменения его не трогают
+    public Iterator<City> getMostPopulated(int limit) {
+        return Iterators.limit(snapshots.snapshot().byPopulationDescending(), limit);
     }
 
-    public Collection<City> getSortedCollection() {
-        return collection.values().stream()
-                .sorted()
-                .collect(Collectors.toList());
+    public Iterator<City> getLeastPopulated(int limit) {
+        return Iterators.limit(snapshots.snapshot().byPopulation(0), limit);
     }
 
-    public List<City> filterStartsWithName(String prefix) {
-        return collection.values().stream()
-                .filter(city -> city.getName().startsWith(prefix))
-                .collect(Collectors.toList());
+    // по дереву имен: работа пропорциональна числу найденных, а не размеру коллекции
+    public Iterator<City> filterStartsWithName(String prefix, boolean ignoreCase) {
+        return snapshots.snapshot().startingWith(prefix, ignoreCase);
     }
 
+    // среднее по городам, у которых высота указана; считается по накопленным сумме и количеству,
+    // прочитанным между изменениями, а не посреди одного из них
     public double getAverageMetersAboveSeaLevel() {
-        return collection.values().stream()
-                .mapToDouble(City::getMetersAboveSeaLevel)
-                .average()
-                .orElse(0.0);
+        checkAggregates();
+        return store.consistentRead(() -> aggregates.getMetersAboveSeaLevel().getAverage());
+    }
+
+    public void setPrettyPrint(boolean prettyPrint) {
+        this.prettyPrint = prettyPrint;
+    }
+
+    public void setAggregateSelfCheck(boolean aggregateSelfCheck) {
+        this.aggregateSelfCheck = aggregateSelfCheck;
+    }
+
+    public void setStrictLoad(boolean strictLoad) {
+        this.strictLoad = strictLoad;
+    }
+
+    // режим проверки: под exclusive коллекция не меняется, пересчитываем с нуля и сверяем с накопленным
+    private void checkAggregates() {
+        if (!aggregateSelfCheck) {
+            return;
+        }
+        store.exclusive(() -> {
+            Collection<City> cities = store.values();
+            List<String> mismatches = aggregates.verify(cities);
+            if (!mismatches.isEmpty()) {
+                System.err.println("агрегаты разошлись с коллекцией, пересчитываем: " + String.join("; ", mismatches));
+                aggregates.rebuild(cities);
+            }
+            return null;
+        });
+    }
+
+    // согласованный срез коллекции на текущий момент, по возрастанию ключа; берется за O(1) и не устаревает
+    public CitySnapshot snapshot() {
+        return snapshots.snapshot();
+    }
+
+    // растет на каждом изменении коллекции и меняется, только когда изменение доведено до конца, вместе
+    // со всеми индексами и журналом. -1 - изменение идет прямо сейчас и версии у состояния нет
+    public long stableVersion() {
+        return store.stableVersion();
+    }
+
+    // true - все, что прочитано после stableVersion(), относится ровно к этой версии
+    public boolean unchangedSince(long version) {
+        return store.unchangedSince(version);
     }
 
-    public Hashtable<Integer, City> getCollection() {
-        return collection;
+    public int size() {
+        return store.size();
     }
 
     public boolean containsKey(Integer key) {
-        return collection.containsKey(key);
+        return store.containsKey(key);
     }
 
     public Set<Integer> getKeys() {
-        return collection.keySet();
+        return store.keys();
     }
 }
\ No newline at end of file
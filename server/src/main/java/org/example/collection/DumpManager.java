@@ -1,87 +1,191 @@
 package org.example.collection;
 
 import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
 import org.example.collection.models.City;
 import org.example.collection.exceptions.*;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
 public class DumpManager {
+    private static final Gson GSON = new GsonBuilder().create();
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    static final int PROGRESS_STEP = 100_000;
 
-    public static JsonElement readJson(String filePath) throws IOException {
-        if (!Files.exists(Path.of(filePath))) {
-            if (!Files.exists(Path.of(filePath + ".json"))) {
-                throw new IOException("такого файла нет");
-            } else {
-                filePath = filePath + ".json";
-            }
+    // куда смотреть: сам путь или он же с .json
+    private static Path resolveExisting(String filePath) throws IOException {
+        if (Files.exists(Path.of(filePath))) {
+            return Path.of(filePath);
         }
+        if (Files.exists(Path.of(filePath + ".json"))) {
+            return Path.of(filePath + ".json");
+        }
+        throw new IOException("такого файла нет");
+    }
 
-        String jsonString = Files.readString(Path.of(filePath));
-
-        if (jsonString.isEmpty()) {
-            return null;
+    // куда писать: как и раньше, если есть только файл с .json, пишем в него
+    private static Path resolveTarget(String filePath) {
+        if (!Files.exists(Path.of(filePath)) && Files.exists(Path.of(filePath + ".json"))) {
+            return Path.of(filePath + ".json");
         }
+        return Path.of(filePath);
+    }
 
-        return JsonParser.parseString(jsonString);
+    // получатель городов при потоковом чтении, index - номер города в файле с нуля
+    public interface CityHandler {
+        void accept(int index, City city) throws ValidationException;
     }
 
-    public static void saveJson(String jsonString, String filePath) throws IOException {
-        if (!Files.exists(Path.of(filePath))) {
-            if (!Files.exists(Path.of(filePath + ".json"))) {
-                Files.createFile(Path.of(filePath));
-            } else {
-                filePath = filePath + ".json";
+    // формат по расширению, как и при записи.
+    // json читается потоково, по одному городу: в памяти никогда нет ни всего текста, ни дерева JsonElement.
+    // возвращает сколько городов прочитано
+    public static int readCities(String filePath, CityHandler handler) throws IOException, ValidationException {
+        Path path = resolveExisting(filePath);
+        if (BinarySnapshot.isBinary(path)) {
+            return BinarySnapshot.read(path, handler);
+        }
+        long fileSize = Files.size(path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+             JsonReader reader = new JsonReader(new BufferedReader(
+                     Channels.newReader(channel, StandardCharsets.UTF_8), READ_BUFFER_SIZE))) {
+            JsonToken first = peekFirst(reader);
+            if (first == null) {
+                System.out.println("файл пустой введи insert чтобы добавить новый город");
+                return 0;
+            }
+            if (first != JsonToken.BEGIN_ARRAY) {
+                // в файле один город без массива
+                handler.accept(0, readCity(reader, 0));
+                return 1;
+            }
+            reader.beginArray();
+            int index = 0;
+            while (reader.hasNext()) {
+                handler.accept(index, readCity(reader, index));
+                index++;
+                if (index % PROGRESS_STEP == 0) {
+                    // позиция канала убегает вперед на размер буфера, для процентов это неважно
+                    System.out.printf("загружено городов: %d (%d%%)%n", index,
+                            fileSize == 0 ? 100 : channel.position() * 100 / fileSize);
+                }
             }
+            reader.endArray();
+            return index;
+        } catch (MalformedJsonException | IllegalStateException e) {
+            throw new IOException("файл поврежден: " + e.getMessage(), e);
         }
-        Files.writeString(Path.of(filePath), jsonString);
     }
 
     // метод для преобразования JSON в список городов
-    public static List<City> jsonFileToCityList(String filePath) throws IOException {
-        JsonElement jsonElement = readJson(filePath);
+    public static List<City> jsonFileToCityList(String filePath) throws IOException, ValidationException {
         List<City> cityList = new ArrayList<>();
-        Gson gson = new GsonBuilder().create();
+        readCities(filePath, (index, city) -> cityList.add(city));
+        return cityList;
+    }
 
-        if (jsonElement == null || jsonElement.isJsonNull()) {
-            System.out.println("файл пустой введи insert чтобы добавить новый город");
-            return cityList;
+    // null для пустого файла или файла из одних пробелов
+    private static JsonToken peekFirst(JsonReader reader) throws IOException {
+        try {
+            JsonToken token = reader.peek();
+            return token == JsonToken.NULL ? null : token;
+        } catch (EOFException e) {
+            return null;
         }
+    }
 
-        if (jsonElement.isJsonArray()) {
-            JsonArray jsonArray = jsonElement.getAsJsonArray();
-            for (JsonElement element : jsonArray.asList()) {
-                City city = gson.fromJson(element, City.class);
-                if (city == null) {
-                    throw new IOException("ошибка: некорректные данные в файле объект City равен null");
-                }
-                cityList.add(city);
-            }
-        } else {
-            City city = gson.fromJson(jsonElement, City.class);
-            if (city == null) {
-                throw new IOException("ошибка: некорректные данные в файле объект City равен null");
-            }
-            cityList.add(city);
+    private static City readCity(JsonReader reader, int index) throws IOException {
+        City city;
+        try {
+            city = GSON.fromJson(reader, City.class);
+        } catch (JsonParseException e) {
+            throw new IOException("ошибка в городе #" + index + ": " + e.getMessage(), e);
         }
-
-        return cityList;
+        if (city == null) {
+            throw new IOException("ошибка: некорректные данные в файле объект City #" + index + " равен null");
+        }
+        return city;
     }
 
     // метод для сохранения коллекции в файл JSON
-    public static void CollectionToJsonFile(Collection collection, String filePath) throws IOException {
-        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    public static void CollectionToJsonFile(Collection<City> collection, String filePath) throws IOException {
+        writeCities(collection, filePath, true);
+    }
+
+    // пишет содержимое файла в открытый канал
+    interface ChannelWriter {
+        void write(FileChannel channel) throws IOException;
+    }
+
+    // формат по расширению: .bin - двоичный снимок, остальное - json
+    public static void writeCities(Iterable<City> cities, String filePath, boolean pretty) throws IOException {
+        Path target = resolveTarget(filePath);
+        if (BinarySnapshot.isBinary(target)) {
+            BinarySnapshot.write(cities, target);
+            return;
+        }
+        replaceAtomically(target, channel -> {
+            JsonWriter writer = new JsonWriter(new BufferedWriter(
+                    Channels.newWriter(channel, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE));
+            if (pretty) {
+                writer.setIndent("  ");
+            }
+            writer.beginArray();
+            for (City city : cities) {
+                GSON.toJson(city, City.class, writer);
+            }
+            writer.endArray();
+            writer.flush(); // не close: он закрыл бы канал раньше force
+        });
+    }
+
+    // файл пишется во временный рядом с целевым, сбрасывается на диск и только потом переименовывается
+    // поверх старого. при падении посреди записи на месте остается прежний целый файл
+    static void replaceAtomically(Path target, ChannelWriter body) throws IOException {
+        target = target.toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            body.write(channel);
+            channel.force(true);
+        } catch (IOException | JsonIOException e) {
+            Files.deleteIfExists(temp);
+            throw new IOException("не удалось записать " + target + ": " + e.getMessage(), e);
+        }
         try {
-            saveJson(gson.toJson(collection), filePath);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        syncDirectory(target.getParent());
+    }
+
+    // чтобы само переименование пережило падение питания; не везде каталог можно открыть, тогда без этого
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
         } catch (IOException e) {
-            throw new IOException(e.getMessage());
+            // windows не дает открыть каталог, rename там и так журналируется
         }
     }
+
     //метод для получения минимального свободного положительного ID
     public static int getSmallestAvailableId(Collection<Integer> existingIds) {
         int id = 1;
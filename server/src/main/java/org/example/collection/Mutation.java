@@ -0,0 +1,59 @@
+package org.example.collection;
+
+import org.example.collection.models.City;
+
+// одна запись журнала изменений: что сделали с коллекцией и по какому ключу
+public class Mutation {
+    public enum Type {
+        INSERT,
+        UPDATE,
+        REMOVE,
+        CLEAR
+    }
+
+    private final Type type;
+    private final Integer key;
+    private final City city;
+
+    private Mutation(Type type, Integer key, City city) {
+        this.type = type;
+        this.key = key;
+        this.city = city;
+    }
+
+    public static Mutation insert(Integer key, City city) {
+        return new Mutation(Type.INSERT, key, city);
+    }
+
+    public static Mutation update(Integer key, City city) {
+        return new Mutation(Type.UPDATE, key, city);
+    }
+
+    public static Mutation remove(Integer key) {
+        return new Mutation(Type.REMOVE, key, null);
+    }
+
+    public static Mutation clear() {
+        return new Mutation(Type.CLEAR, null, null);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Integer getKey() {
+        return key;
+    }
+
+    public City getCity() {
+        return city;
+    }
+
+    @Override
+    public String toString() {
+        return "Mutation{" +
+                "type=" + type +
+                ", key=" + key +
+                '}';
+    }
+}
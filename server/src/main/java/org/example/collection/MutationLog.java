@@ -0,0 +1,216 @@
+package org.example.collection;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// журнал изменений только на дозапись: по строке json на изменение.
+// полный снимок коллекции пишется редко (компакция), а между снимками все изменения лежат тут
+public class MutationLog implements AutoCloseable {
+    private static final Gson gson = new Gson();
+
+    private final Path path;
+    private final Path rotatedPath;
+    private final SyncPolicy syncPolicy;
+    private final ScheduledExecutorService syncer;
+    private FileChannel channel;
+    private int records; // сколько записей с последней ротации
+    private boolean dirty; // есть записанное, но еще не сброшенное fsync-ом
+    private ByteArrayOutputStream group; // не null - записи копятся и уйдут в файл одним куском
+    private int groupRecords;
+    private IOException broken; // не удалось ни дописать, ни отрезать недописанное - дальше писать нельзя
+
+    public MutationLog(Path path, SyncPolicy syncPolicy, long syncIntervalMs) throws IOException {
+        this.path = path;
+        this.rotatedPath = rotatedPath(path);
+        this.syncPolicy = syncPolicy;
+        this.channel = open(path);
+        if (syncPolicy == SyncPolicy.INTERVAL) {
+            syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "wal-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncer.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMs, syncIntervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            syncer = null;
+        }
+    }
+
+    public static Path rotatedPath(Path path) {
+        return path.resolveSibling(path.getFileName() + ".old");
+    }
+
+    // O(1): одна строка в конец файла, fsync по политике
+    public synchronized void append(Mutation mutation) throws IOException {
+        byte[] line = (gson.toJson(mutation) + "\n").getBytes(StandardCharsets.UTF_8);
+        if (group != null) {
+            group.write(line, 0, line.length);
+            groupRecords++;
+            return;
+        }
+        write(ByteBuffer.wrap(line));
+        records++;
+    }
+
+    // пачка изменений: до commitGroup записи только копятся в памяти
+    public synchronized void beginGroup() {
+        if (group == null) {
+            group = new ByteArrayOutputStream();
+            groupRecords = 0;
+        }
+    }
+
+    // вся пачка одной записью в файл и при ALWAYS одним fsync. при ошибке в файле не остается ничего из пачки
+    public synchronized void commitGroup() throws IOException {
+        ByteArrayOutputStream pending = group;
+        group = null;
+        if (pending != null && pending.size() > 0) {
+            write(ByteBuffer.wrap(pending.toByteArray()));
+            records += groupRecords;
+        }
+    }
+
+    // либо запись целиком в файле (и при ALWAYS на диске), либо файл отрезается до прежней длины
+    // и вызывающий получает ошибку: полузаписанная строка не должна проиграться при загрузке
+    private void write(ByteBuffer buffer) throws IOException {
+        if (broken != null) {
+            throw new IOException("журнал изменений недоступен после ошибки записи", broken);
+        }
+        long length = channel.size();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            dirty = true;
+            if (syncPolicy == SyncPolicy.ALWAYS) {
+                sync();
+            }
+        } catch (IOException e) {
+            try {
+                channel.truncate(length);
+            } catch (IOException truncateError) {
+                e.addSuppressed(truncateError);
+                broken = e;
+            }
+            throw e;
+        }
+    }
+
+    public synchronized int size() {
+        return records;
+    }
+
+    public synchronized void sync() throws IOException {
+        if (dirty && channel.isOpen()) {
+            channel.force(false);
+            dirty = false;
+        }
+    }
+
+    // откладывает текущий журнал в .old и начинает новый пустой.
+    // вызывающий обязан держать коллекцию неизменной, пока снимает с нее копию для снимка
+    public synchronized Path rotate() throws IOException {
+        channel.force(false);
+        channel.close();
+        if (Files.exists(rotatedPath)) {
+            // прошлая компакция не доехала, ее хвост еще нужен - дописываем текущий журнал к нему
+            try (FileChannel old = FileChannel.open(rotatedPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                 FileChannel current = FileChannel.open(path, StandardOpenOption.READ)) {
+                current.transferTo(0, current.size(), old);
+                old.force(false);
+            }
+            Files.delete(path);
+        } else {
+            Files.move(path, rotatedPath, StandardCopyOption.ATOMIC_MOVE);
+        }
+        channel = open(path);
+        records = 0;
+        dirty = false;
+        return rotatedPath;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (syncer != null) {
+            syncer.shutdown();
+        }
+        if (channel.isOpen()) {
+            channel.force(false);
+            channel.close();
+        }
+    }
+
+    // проигрывает журнал с начала. оборванная последняя строка (упали посреди записи) отрезается,
+    // битая строка в середине - это уже порча файла и ошибка. возвращает число проигранных записей
+    public static int replay(Path path, Consumer<Mutation> consumer) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        long fileSize = Files.size(path);
+        int applied = 0;
+        long goodLength = 0;
+        long offset = 0;
+        int lineNumber = 0;
+        String brokenLine = null;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                offset += line.getBytes(StandardCharsets.UTF_8).length + 1;
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (brokenLine != null) {
+                    throw new IOException("журнал " + path + " поврежден в строке " + (lineNumber - 1) + ": " + brokenLine);
+                }
+                Mutation mutation;
+                try {
+                    mutation = gson.fromJson(line, Mutation.class);
+                } catch (JsonParseException e) {
+                    mutation = null;
+                }
+                if (mutation == null || mutation.getType() == null) {
+                    brokenLine = line;
+                    continue;
+                }
+                consumer.accept(mutation);
+                applied++;
+                goodLength = Math.min(offset, fileSize); // у последней строки может не быть \n
+            }
+        }
+        if (brokenLine != null) {
+            System.err.println("журнал " + path + " оборван на последней записи, хвост отброшен");
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(goodLength);
+            }
+        }
+        return applied;
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            System.err.println("ошибка при fsync журнала изменений: " + e.getMessage());
+        }
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+}
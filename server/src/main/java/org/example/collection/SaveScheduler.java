@@ -0,0 +1,133 @@
+package org.example.collection;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// схлопывает пачку изменений в одну запись снимка: после первого изменения ждем не дольше maxDelayMs,
+// а если изменений накопилось maxPendingMutations - пишем сразу. сами записи идут по одной в своем потоке
+public class SaveScheduler {
+    public interface SaveTask {
+        void save() throws IOException;
+    }
+
+    private final SaveTask task;
+    private final long maxDelayMs;
+    private final int maxPendingMutations;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "collection-saver");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ScheduledFuture<?> scheduledSave;
+    private int pending; // изменений с последней записи
+    private long requested; // всего отмеченных изменений
+    private long performed; // реально выполненных записей
+    private long coalesced; // изменений, которые уехали в чужую запись вместо своей
+    private boolean closed;
+
+    public SaveScheduler(SaveTask task, long maxDelayMs, int maxPendingMutations) {
+        this.task = task;
+        this.maxDelayMs = maxDelayMs;
+        this.maxPendingMutations = maxPendingMutations;
+    }
+
+    public synchronized void markDirty() {
+        if (closed) {
+            return;
+        }
+        requested++;
+        pending++;
+        schedule(pending >= maxPendingMutations ? 0 : maxDelayMs);
+    }
+
+    // записать как можно скорее, не дожидаясь накопления
+    public synchronized void saveSoon() {
+        if (closed) {
+            return;
+        }
+        pending++;
+        requested++;
+        schedule(0);
+    }
+
+    // блокирующая запись всего, что накопилось, и остановка потока записи
+    public void close(long timeoutMs) throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            executor.submit(() -> {
+                runSave();
+                return null;
+            }).get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IOException("последнее сохранение не удалось: " + e.getCause().getMessage(), e.getCause());
+        } catch (TimeoutException e) {
+            throw new IOException("последнее сохранение не успело за " + timeoutMs + " мс");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public synchronized String getStats() {
+        return String.format("изменений: %d, записей снимка: %d, схлопнуто: %d, ждут записи: %d",
+                requested, performed, coalesced, pending);
+    }
+
+    // вызывается под this. уже запланированная более ранняя запись нас устраивает, более позднюю переносим
+    private void schedule(long delayMs) {
+        if (scheduledSave != null && !scheduledSave.isDone()) {
+            if (scheduledSave.getDelay(TimeUnit.MILLISECONDS) <= delayMs) {
+                return;
+            }
+            scheduledSave.cancel(false);
+        }
+        scheduledSave = executor.schedule(this::runSaveQuietly, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void runSaveQuietly() {
+        try {
+            runSave();
+        } catch (IOException e) {
+            System.err.println("ошибка при асинхронном сохранении: " + e.getMessage());
+        }
+    }
+
+    private void runSave() throws IOException {
+        int batch;
+        synchronized (this) {
+            scheduledSave = null;
+            batch = pending;
+            pending = 0;
+        }
+        if (batch == 0) {
+            return;
+        }
+        try {
+            task.save();
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                pending += batch; // не записали - попробуем снова со следующей порцией
+                if (!closed) {
+                    schedule(maxDelayMs);
+                }
+            }
+            throw e;
+        }
+        synchronized (this) {
+            performed++;
+            coalesced += batch - 1;
+        }
+    }
+}
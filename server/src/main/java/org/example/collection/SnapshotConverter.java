@@ -0,0 +1,35 @@
+package org.example.collection;
+
+import org.example.collection.exceptions.ValidationException;
+import org.example.collection.models.City;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// перегонка файла коллекции между json и двоичным снимком, формат по расширению:
+// java -cp server.jar org.example.collection.SnapshotConverter cities.json cities.bin [--compact]
+public class SnapshotConverter {
+    public static void main(String[] args) {
+        if (args.length < 2 || args.length > 3 || (args.length == 3 && !args[2].equals("--compact"))) {
+            System.err.println("использование: SnapshotConverter <откуда> <куда> [--compact]");
+            System.exit(1);
+        }
+        try {
+            long start = System.nanoTime();
+            List<City> cities = new ArrayList<>();
+            DumpManager.readCities(args[0], (index, city) -> {
+                city.validate();
+                cities.add(city);
+            });
+            long read = System.nanoTime();
+            DumpManager.writeCities(cities, args[1], args.length < 3);
+            long written = System.nanoTime();
+            System.out.printf("перегнано городов: %d, чтение %d мс, запись %d мс%n",
+                    cities.size(), (read - start) / 1_000_000, (written - read) / 1_000_000);
+        } catch (IOException | ValidationException e) {
+            System.err.println("не получилось: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
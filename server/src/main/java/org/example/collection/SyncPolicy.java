@@ -0,0 +1,16 @@
+package org.example.collection;
+
+// когда журнал изменений сбрасывается на диск через fsync
+public enum SyncPolicy {
+    ALWAYS,   // после каждой записи, при падении ничего не теряем, но медленно
+    INTERVAL, // фоном раз в заданный интервал, теряем максимум последний интервал
+    NONE;     // оставляем на совесть ОС
+
+    public static SyncPolicy parse(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("неизвестная политика синхронизации: " + value + ", есть always, interval, none");
+        }
+    }
+}
@@ -2,7 +2,11 @@ package org.example.collection.models;
 
 import org.example.collection.exceptions.ValidationException;
 
-public class Coordinates {
+import java.io.Serializable;
+
+public class Coordinates implements Serializable {
+    private static final long serialVersionUID = 39120458L;
+
     private Integer x; // Значение поля должно быть больше -81, Поле не может быть null
     private Long y; // Поле не может быть null
 
@@ -2,7 +2,11 @@ package org.example.collection.models;
 
 import org.example.collection.exceptions.ValidationException;
 
-public class Human {
+import java.io.Serializable;
+
+public class Human implements Serializable {
+    private static final long serialVersionUID = 46205517L;
+
     private String name; // Поле не может быть null, Строка не может быть пустой
 
     public Human(String name) {
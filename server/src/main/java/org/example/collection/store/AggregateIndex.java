@@ -0,0 +1,210 @@
+package org.example.collection.store;
+
+import org.example.collection.models.City;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+// количество, сумма, минимум и максимум по числовым полям, правятся на каждое изменение за O(1)
+// (мин/макс - O(log n) по счетчикам значений), так что среднее и info не проходят коллекцию.
+// сумма площади и населения копится точно в long, высоты - в double.
+// null в поле (высота бывает не указана) просто не учитывается
+public class AggregateIndex implements CityIndex {
+    private final Stat area = new Stat("площадь", City::getArea, true);
+    private final Stat population = new Stat("население", City::getPopulation, true);
+    private final Stat metersAboveSeaLevel = new Stat("высота над уровнем моря", City::getMetersAboveSeaLevel, false);
+    private final Stat[] stats = {area, population, metersAboveSeaLevel};
+
+    @Override
+    public void onPut(Integer key, City oldCity, City newCity) {
+        for (Stat stat : stats) {
+            if (oldCity != null) {
+                stat.remove(oldCity);
+            }
+            stat.add(newCity);
+        }
+    }
+
+    @Override
+    public void onRemove(Integer key, City oldCity) {
+        for (Stat stat : stats) {
+            stat.remove(oldCity);
+        }
+    }
+
+    @Override
+    public void onClear() {
+        for (Stat stat : stats) {
+            stat.clear();
+        }
+    }
+
+    public Stat getArea() {
+        return area;
+    }
+
+    public Stat getPopulation() {
+        return population;
+    }
+
+    public Stat getMetersAboveSeaLevel() {
+        return metersAboveSeaLevel;
+    }
+
+    public String describe() {
+        StringBuilder result = new StringBuilder();
+        for (Stat stat : stats) {
+            if (result.length() > 0) {
+                result.append('\n');
+            }
+            result.append(stat);
+        }
+        return result.toString();
+    }
+
+    // пересчет с нуля по переданным городам и сравнение; пусто - значит все сходится.
+    // звать на неизменяемой копии, иначе параллельные изменения дадут ложные расхождения
+    public List<String> verify(Iterable<City> cities) {
+        AggregateIndex expected = new AggregateIndex();
+        int key = 0;
+        for (City city : cities) {
+            expected.onPut(key++, null, city);
+        }
+        List<String> mismatches = new ArrayList<>();
+        for (int i = 0; i < stats.length; i++) {
+            stats[i].compare(expected.stats[i], mismatches);
+        }
+        return mismatches;
+    }
+
+    // заменить накопленное пересчитанным, если verify нашел расхождение
+    public void rebuild(Iterable<City> cities) {
+        onClear();
+        int key = 0;
+        for (City city : cities) {
+            onPut(key++, null, city);
+        }
+    }
+
+    public static class Stat {
+        private final String name;
+        private final Function<City, Number> field;
+        private final boolean integral; // сумма целых полей копится точно, дробных - с погрешностью округления
+        private final LongAdder count = new LongAdder();
+        private final LongAdder longSum = new LongAdder();
+        private final DoubleAdder doubleSum = new DoubleAdder();
+        private final LongAdder operations = new LongAdder(); // сколько раз правили дробную сумму, с ними растет погрешность
+        // значение -> сколько раз встречается, первый и последний ключи дают мин и макс
+        private final ConcurrentSkipListMap<Double, Integer> values = new ConcurrentSkipListMap<>();
+
+        private Stat(String name, Function<City, Number> field, boolean integral) {
+            this.name = name;
+            this.field = field;
+            this.integral = integral;
+        }
+
+        private void add(City city) {
+            Number value = field.apply(city);
+            if (value == null) {
+                return;
+            }
+            double v = value.doubleValue();
+            count.increment();
+            addToSum(value, 1);
+            values.merge(v, 1, Integer::sum);
+        }
+
+        private void remove(City city) {
+            Number value = field.apply(city);
+            if (value == null) {
+                return;
+            }
+            double v = value.doubleValue();
+            count.decrement();
+            addToSum(value, -1);
+            values.computeIfPresent(v, (k, n) -> n == 1 ? null : n - 1);
+        }
+
+        private void addToSum(Number value, int sign) {
+            if (integral) {
+                longSum.add(sign * value.longValue());
+            } else {
+                doubleSum.add(sign * value.doubleValue());
+                operations.increment();
+            }
+        }
+
+        private void clear() {
+            values.clear();
+            count.reset();
+            longSum.reset();
+            doubleSum.reset();
+            operations.reset();
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public double getSum() {
+            return integral ? longSum.sum() : doubleSum.sum();
+        }
+
+        // null, если ни у одного города значение не указано
+        public Double getMin() {
+            Map.Entry<Double, Integer> entry = values.firstEntry();
+            return entry == null ? null : entry.getKey();
+        }
+
+        public Double getMax() {
+            Map.Entry<Double, Integer> entry = values.lastEntry();
+            return entry == null ? null : entry.getKey();
+        }
+
+        public double getAverage() {
+            long n = getCount();
+            return n == 0 ? 0.0 : getSum() / n;
+        }
+
+        private void compare(Stat expected, List<String> mismatches) {
+            if (getCount() != expected.getCount()
+                    || !sumMatches(expected)
+                    || !Objects.equals(getMin(), expected.getMin())
+                    || !Objects.equals(getMax(), expected.getMax())) {
+                mismatches.add(name + ": накоплено {" + this.summary() + "}, по факту {" + expected.summary() + "}");
+            }
+        }
+
+        // целые суммы обязаны совпасть точно. у дробной каждое сложение ошибается не больше чем на ulp
+        // от масштаба суммы, так что допуск растет с числом правок, а не берется одним на все случаи
+        private boolean sumMatches(Stat expected) {
+            if (integral) {
+                return longSum.sum() == expected.longSum.sum();
+            }
+            double scale = Math.max(Math.abs(expected.getSum()), 1.0);
+            Double min = expected.getMin();
+            Double max = expected.getMax();
+            if (min != null) {
+                scale = Math.max(scale, Math.max(Math.abs(min), Math.abs(max)) * expected.getCount());
+            }
+            double tolerance = (operations.sum() + expected.operations.sum()) * Math.ulp(scale);
+            return Math.abs(getSum() - expected.getSum()) <= tolerance;
+        }
+
+        private String summary() {
+            return String.format("количество=%d, сумма=%s, мин=%s, макс=%s",
+                    getCount(), integral ? String.valueOf(longSum.sum()) : String.valueOf(doubleSum.sum()), getMin(), getMax());
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + summary() + ", среднее=" + getAverage();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.example.collection.store;
+
+import org.example.collection.models.City;
+import org.example.collection.models.Climate;
+import org.example.collection.models.Government;
+import org.example.collection.models.StandardOfLiving;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// поля-перечисления города: по ним снимок держит отдельные деревья, а EnumIndex - корзины ключей
+public enum CityCategory {
+    CLIMATE(Climate.values(), City::getClimate),
+    GOVERNMENT(Government.values(), City::getGovernment),
+    STANDARD_OF_LIVING(StandardOfLiving.values(), City::getStandardOfLiving);
+
+    private final Enum<?>[] values;
+    private final Function<City, Enum<?>> extractor;
+
+    CityCategory(Enum<?>[] values, Function<City, Enum<?>> extractor) {
+        this.values = values;
+        this.extractor = extractor;
+    }
+
+    public Enum<?>[] getValues() {
+        return values.clone();
+    }
+
+    int size() {
+        return values.length;
+    }
+
+    public Enum<?> extract(City city) {
+        return extractor.apply(city);
+    }
+
+    public String getFieldName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    public Enum<?> parseValue(String value) {
+        for (Enum<?> candidate : values) {
+            if (candidate.name().equalsIgnoreCase(value)) {
+                return candidate;
+            }
+        }
+        throw new IllegalArgumentException("у поля " + getFieldName() + " нет значения " + value + ", есть: "
+                + Arrays.stream(values).map(Enum::name).collect(Collectors.joining(", ")));
+    }
+
+    public static CityCategory parse(String field) {
+        for (CityCategory category : values()) {
+            if (category.getFieldName().equalsIgnoreCase(field)) {
+                return category;
+            }
+        }
+        throw new IllegalArgumentException("нет такого поля " + field + ", есть: "
+                + Arrays.stream(values()).map(CityCategory::getFieldName).collect(Collectors.joining(", ")));
+    }
+}
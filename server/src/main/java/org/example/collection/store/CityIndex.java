@@ -0,0 +1,14 @@
+package org.example.collection.store;
+
+import org.example.collection.models.City;
+
+// вторичный индекс над хранилищем. методы вызываются внутри атомарной операции над ключом,
+// так что для одного ключа события приходят строго по порядку; сами индексы должны быть потокобезопасны
+public interface CityIndex {
+    // oldCity == null при вставке нового ключа
+    void onPut(Integer key, City oldCity, City newCity);
+
+    void onRemove(Integer key, City oldCity);
+
+    void onClear();
+}
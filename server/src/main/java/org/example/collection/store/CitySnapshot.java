@@ -0,0 +1,208 @@
+package org.example.collection.store;
+
+import org.example.collection.models.City;
+
+import java.util.AbstractCollection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
+
+// неизменяемый снимок коллекции на момент version: несколько деревьев CityTree над одними и теми же городами -
+// по ключу, по населению, по имени (с учетом и без учета регистра) и по каждому полю-перечислению.
+// изменение дает новый снимок, копируя в каждом дереве только путь от корня (O(log n)), остальное общее со старым,
+// поэтому держать снимок можно сколько угодно долго, он не копирует коллекцию и не мешает писателям.
+// все чтения из одного снимка согласованы между собой: размер, порядок и выборки видят одно и то же состояние
+public final class CitySnapshot extends AbstractCollection<City> {
+    private static final CityTree.Order BY_KEY = (key1, city1, key2, city2) -> Integer.compare(key1, key2);
+    private static final CityTree.Order BY_POPULATION = (key1, city1, key2, city2) -> {
+        int c = Long.compare(population(city1), population(city2));
+        return c != 0 ? c : Integer.compare(key1, key2);
+    };
+    private static final CityTree.Order BY_NAME = byName(false);
+    private static final CityTree.Order BY_FOLDED_NAME = byName(true);
+
+    static final CitySnapshot EMPTY = new CitySnapshot(empty(), 0);
+
+    // деревья лежат в одном массиве, чтобы изменение шло по всем одним циклом
+    private static final int BY_KEY_TREE = 0;
+    private static final int BY_POPULATION_TREE = 1;
+    private static final int BY_NAME_TREE = 2;
+    private static final int BY_FOLDED_NAME_TREE = 3;
+    private static final int FIRST_CATEGORY_TREE = 4; // дальше по CityCategory.ordinal()
+
+    private final CityTree[] trees;
+    private final long version;
+
+    private CitySnapshot(CityTree[] trees, long version) {
+        this.trees = trees;
+        this.version = version;
+    }
+
+    // номер изменения, после которого снят снимок; растет на каждое изменение коллекции
+    public long version() {
+        return version;
+    }
+
+    @Override
+    public int size() {
+        return trees[BY_KEY_TREE].size();
+    }
+
+    public City get(int key) {
+        return trees[BY_KEY_TREE].find((k, city) -> Integer.compare(key, k));
+    }
+
+    // города по возрастанию ключа
+    @Override
+    public Iterator<City> iterator() {
+        return trees[BY_KEY_TREE].ascending();
+    }
+
+    // пары ключ-город по возрастанию ключа
+    public void forEach(BiConsumer<Integer, City> action) {
+        trees[BY_KEY_TREE].forEach(action);
+    }
+
+    // города с ключами от from до to включительно, по возрастанию ключа
+    public Iterator<City> keyRange(int from, int to) {
+        return trees[BY_KEY_TREE].range((k, city) -> Integer.compare(from, k), (k, city) -> Integer.compare(to, k));
+    }
+
+    // по возрастанию населения, при равном - по ключу, начиная с города номер offset (O(log n), а не O(offset))
+    public Iterator<City> byPopulation(long offset) {
+        return trees[BY_POPULATION_TREE].ascendingFrom(offset);
+    }
+
+    public Iterator<City> byPopulationDescending() {
+        return trees[BY_POPULATION_TREE].descending();
+    }
+
+    // спуск к первому имени не меньше префикса и проход, пока имена с него начинаются: время пропорционально ответу
+    public Iterator<City> startingWith(String prefix, boolean ignoreCase) {
+        CityTree tree = trees[ignoreCase ? BY_FOLDED_NAME_TREE : BY_NAME_TREE];
+        String probe = ignoreCase ? fold(prefix) : prefix;
+        return tree.range(
+                (k, city) -> compareNames(probe, name(city, ignoreCase)),
+                (k, city) -> name(city, ignoreCase) != null && name(city, ignoreCase).startsWith(probe) ? 1 : -1);
+    }
+
+    public Iterator<City> withCategory(CityCategory category, Enum<?> value) {
+        int ordinal = ordinal(category, value);
+        return trees[FIRST_CATEGORY_TREE + category.ordinal()].range(
+                (k, city) -> Integer.compare(ordinal, ordinal(category, category.extract(city))),
+                (k, city) -> Integer.compare(ordinal, ordinal(category, category.extract(city))));
+    }
+
+    // значение -> сколько городов, в порядке объявления; null - для не указанного значения.
+    // каждое число - разность двух рангов, O(log n) на значение
+    public Map<Enum<?>, Integer> counts(CityCategory category) {
+        CityTree tree = trees[FIRST_CATEGORY_TREE + category.ordinal()];
+        Map<Enum<?>, Integer> counts = new LinkedHashMap<>();
+        int below = 0;
+        for (Enum<?> value : category.getValues()) {
+            int next = ordinal(category, value) + 1;
+            int upTo = tree.rank((k, city) -> Integer.compare(next, ordinal(category, category.extract(city))));
+            counts.put(value, upTo - below);
+            below = upTo;
+        }
+        counts.put(null, tree.size() - below);
+        return counts;
+    }
+
+    // для тестов: все деревья сбалансированы и в каждом все города
+    boolean isBalanced() {
+        for (CityTree tree : trees) {
+            if (tree.checkBalance() != size()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    CitySnapshot with(int key, City city) {
+        City old = get(key);
+        return change(tree -> tree.with(key, old, city));
+    }
+
+    CitySnapshot without(int key) {
+        City old = get(key);
+        if (old == null) {
+            return new CitySnapshot(trees, version + 1);
+        }
+        return change(tree -> tree.without(key, old));
+    }
+
+    CitySnapshot cleared() {
+        return new CitySnapshot(empty(), version + 1);
+    }
+
+    // все деревья заново по готовым городам, в каждом O(n log n) на сортировку
+    CitySnapshot rebuilt(List<Map.Entry<Integer, City>> entries) {
+        return change(tree -> tree.rebuilt(entries));
+    }
+
+    private CitySnapshot change(UnaryOperator<CityTree> change) {
+        CityTree[] changed = new CityTree[trees.length];
+        for (int i = 0; i < trees.length; i++) {
+            changed[i] = change.apply(trees[i]);
+        }
+        return new CitySnapshot(changed, version + 1);
+    }
+
+    private static CityTree[] empty() {
+        CityCategory[] categories = CityCategory.values();
+        CityTree[] trees = new CityTree[FIRST_CATEGORY_TREE + categories.length];
+        trees[BY_KEY_TREE] = new CityTree(BY_KEY);
+        trees[BY_POPULATION_TREE] = new CityTree(BY_POPULATION);
+        trees[BY_NAME_TREE] = new CityTree(BY_NAME);
+        trees[BY_FOLDED_NAME_TREE] = new CityTree(BY_FOLDED_NAME);
+        for (CityCategory category : categories) {
+            trees[FIRST_CATEGORY_TREE + category.ordinal()] = new CityTree(byCategory(category));
+        }
+        return trees;
+    }
+
+    private static CityTree.Order byName(boolean folded) {
+        return (key1, city1, key2, city2) -> {
+            int c = compareNames(name(city1, folded), name(city2, folded));
+            return c != 0 ? c : Integer.compare(key1, key2);
+        };
+    }
+
+    // не указанное значение идет последним, как и в EnumIndex
+    private static CityTree.Order byCategory(CityCategory category) {
+        return (key1, city1, key2, city2) -> {
+            int c = Integer.compare(ordinal(category, category.extract(city1)), ordinal(category, category.extract(city2)));
+            return c != 0 ? c : Integer.compare(key1, key2);
+        };
+    }
+
+    private static int ordinal(CityCategory category, Enum<?> value) {
+        return value == null ? category.size() : value.ordinal();
+    }
+
+    private static long population(City city) {
+        return city.getPopulation() != null ? city.getPopulation() : Long.MIN_VALUE;
+    }
+
+    // города без имени - в начале
+    private static int compareNames(String a, String b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        return a.compareTo(b);
+    }
+
+    private static String name(City city, boolean folded) {
+        String name = city.getName();
+        return folded && name != null ? fold(name) : name;
+    }
+
+    private static String fold(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,341 @@
+package org.example.collection.store;
+
+import org.example.collection.Mutation;
+import org.example.collection.models.City;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiPredicate;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+// хранилище городов поверх ConcurrentHashMap: чтение без блокировок,
+// изменение одного ключа атомарно через compute и блокирует только свою корзину мапы.
+// целиком хранилище запирается лишь для clear и для снятия согласованной копии (exclusive)
+public class CityStore {
+    private static final int OPTIMISTIC_READS = 8;
+
+    private final ConcurrentHashMap<Integer, City> map = new ConcurrentHashMap<>();
+    // shared - обычные изменения по ключам, их может быть сколько угодно одновременно; exclusive - clear и снимки
+    private final ReentrantReadWriteLock structureLock = new ReentrantReadWriteLock();
+    private volatile Journal journal = Journal.NONE;
+    private final List<CityIndex> indexes = new CopyOnWriteArrayList<>();
+    // сколько изменений начато и сколько доведено до конца, вместе с индексами и журналом.
+    // равны - прямо сейчас коллекцию никто не меняет; finished - номер версии для читателей
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong finished = new AtomicLong();
+
+    public void setJournal(Journal journal) {
+        this.journal = journal;
+    }
+
+    // индекс подключается к пустому хранилищу, задним числом он не заполняется
+    public <T extends CityIndex> T addIndex(T index) {
+        indexes.add(index);
+        return index;
+    }
+
+    public City get(Integer key) {
+        return map.get(key);
+    }
+
+    public boolean containsKey(Integer key) {
+        return map.containsKey(key);
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public String describe() {
+        return map.getClass().getName();
+    }
+
+    // живые представления, итерация слабо согласована и не блокирует писателей
+    public Collection<City> values() {
+        return map.values();
+    }
+
+    public Set<Integer> keys() {
+        return map.keySet();
+    }
+
+    public Set<Map.Entry<Integer, City>> entries() {
+        return map.entrySet();
+    }
+
+    public void insert(Integer key, City city) throws IOException {
+        City[] before = new City[1];
+        beginChange();
+        try {
+            map.compute(key, (k, old) -> {
+                before[0] = old;
+                notifyPut(k, old, city);
+                return city;
+            });
+            record(key, before[0], city, Mutation.insert(key, city));
+        } finally {
+            endChange();
+        }
+    }
+
+    // атомарно заменяет город, если ключ есть. updater возвращает новый город или null, если менять не надо
+    public boolean update(Integer key, UnaryOperator<City> updater) throws IOException {
+        City[] change = new City[2]; // было, стало
+        beginChange();
+        try {
+            map.computeIfPresent(key, (k, old) -> {
+                City replacement = updater.apply(old);
+                if (replacement == null) {
+                    return old;
+                }
+                notifyPut(k, old, replacement);
+                change[0] = old;
+                change[1] = replacement;
+                return replacement;
+            });
+            if (change[1] == null) {
+                return false;
+            }
+            record(key, change[0], change[1], Mutation.update(key, change[1]));
+        } finally {
+            endChange();
+        }
+        return true;
+    }
+
+    public boolean remove(Integer key) throws IOException {
+        return removeIf(key, (k, city) -> true);
+    }
+
+    // удаляет все подходящие, каждое удаление атомарно и проверяет условие на актуальном значении
+    public int removeIf(BiPredicate<Integer, City> predicate) throws IOException {
+        int removed = 0;
+        for (Map.Entry<Integer, City> entry : map.entrySet()) {
+            if (predicate.test(entry.getKey(), entry.getValue()) && removeIf(entry.getKey(), predicate)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    // удаление по готовому списку ключей, например по диапазону из KeyIndex: O(k log n) вместо полного прохода
+    public int removeKeys(Iterable<Integer> keys) throws IOException {
+        return removeKeys(keys, (k, city) -> true);
+    }
+
+    // то же, но условие перепроверяется на актуальном значении: индекс мог чуть отстать от параллельного изменения
+    public int removeKeys(Iterable<Integer> keys, BiPredicate<Integer, City> predicate) throws IOException {
+        int removed = 0;
+        for (Integer key : keys) {
+            if (removeIf(key, predicate)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public void clear() throws IOException {
+        structureLock.writeLock().lock();
+        started.incrementAndGet();
+        try {
+            journal.record(Mutation.clear());
+            map.clear();
+            indexes.forEach(CityIndex::onClear);
+        } finally {
+            finished.incrementAndGet();
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    // выполняет действие, пока ни одно изменение не идет, например снятие копии для снимка
+    public <T> T exclusive(Supplier<T> action) {
+        structureLock.writeLock().lock();
+        try {
+            return action.get();
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    // номер версии, если прямо сейчас ничего не меняется, иначе -1. состояние этой версии - все, что видно,
+    // пока unchangedSince(version) остается true
+    public long stableVersion() {
+        long version = finished.get();
+        return started.get() == version ? version : -1;
+    }
+
+    // с момента stableVersion() == version не началось ни одного изменения
+    public boolean unchangedSince(long version) {
+        return started.get() == version;
+    }
+
+    // чтение нескольких величин (размер, суммы, счетчики) так, чтобы все они были между изменениями, а не посреди:
+    // сначала без блокировки - годится, если ни одно изменение не шло ни перед чтением, ни во время него.
+    // если писатели так и не дали прочитать, берем exclusive, тогда изменения подождут
+    public <T> T consistentRead(Supplier<T> read) {
+        for (int attempt = 0; attempt < OPTIMISTIC_READS; attempt++) {
+            long version = finished.get();
+            if (started.get() == version) {
+                T result = read.get();
+                if (started.get() == version) {
+                    return result;
+                }
+            }
+            Thread.onSpinWait();
+        }
+        return exclusive(read);
+    }
+
+    // откат к снимку, мимо журнала: ключи, которых в снимке нет, удаляются, остальные возвращаются к городам снимка.
+    // O(n), нужен только когда изменения уже в памяти, а в журнал не попали
+    public void restore(CitySnapshot snapshot) {
+        exclusive(() -> {
+            started.incrementAndGet();
+            for (Integer key : map.keySet()) {
+                if (snapshot.get(key) == null) {
+                    map.computeIfPresent(key, (k, old) -> {
+                        notifyRemove(k, old);
+                        return null;
+                    });
+                }
+            }
+            snapshot.forEach((key, city) -> map.compute(key, (k, old) -> {
+                if (old != city) {
+                    notifyPut(k, old, city);
+                }
+                return city;
+            }));
+            finished.incrementAndGet();
+            return null;
+        });
+    }
+
+    // повтор записи журнала при загрузке, сама в журнал не пишется, но индексы обновляет
+    public void apply(Mutation mutation) {
+        started.incrementAndGet();
+        try {
+            replay(mutation);
+        } finally {
+            finished.incrementAndGet();
+        }
+    }
+
+    private void replay(Mutation mutation) {
+        switch (mutation.getType()) {
+            case INSERT:
+            case UPDATE:
+                map.compute(mutation.getKey(), (k, old) -> {
+                    notifyPut(k, old, mutation.getCity());
+                    return mutation.getCity();
+                });
+                break;
+            case REMOVE:
+                map.computeIfPresent(mutation.getKey(), (k, old) -> {
+                    notifyRemove(k, old);
+                    return null;
+                });
+                break;
+            case CLEAR:
+                structureLock.writeLock().lock();
+                try {
+                    map.clear();
+                    indexes.forEach(CityIndex::onClear);
+                } finally {
+                    structureLock.writeLock().unlock();
+                }
+                break;
+        }
+    }
+
+    // вставка при начальной загрузке, без журнала. если ключ занят, replace(старый, новый) решает, кто останется;
+    // вызывается под блокировкой ключа. false - ключ уже был
+    public boolean load(Integer key, City city, BiPredicate<City, City> replace) {
+        boolean[] inserted = new boolean[1];
+        started.incrementAndGet();
+        map.compute(key, (k, old) -> {
+            if (old != null && !replace.test(old, city)) {
+                return old;
+            }
+            notifyPut(k, old, city);
+            inserted[0] = old == null;
+            return city;
+        });
+        finished.incrementAndGet();
+        return inserted[0];
+    }
+
+    private boolean removeIf(Integer key, BiPredicate<Integer, City> predicate) throws IOException {
+        City[] removed = new City[1];
+        beginChange();
+        try {
+            map.computeIfPresent(key, (k, old) -> {
+                if (!predicate.test(k, old)) {
+                    return old;
+                }
+                notifyRemove(k, old);
+                removed[0] = old;
+                return null;
+            });
+            if (removed[0] == null) {
+                return false;
+            }
+            record(key, removed[0], null, Mutation.remove(key));
+        } finally {
+            endChange();
+        }
+        return true;
+    }
+
+    // изменение по ключу: shared-блокировка, чтобы exclusive его дождался, и счетчики для consistentRead
+    private void beginChange() {
+        structureLock.readLock().lock();
+        started.incrementAndGet();
+    }
+
+    private void endChange() {
+        finished.incrementAndGet();
+        structureLock.readLock().unlock();
+    }
+
+    private void notifyPut(Integer key, City oldCity, City newCity) {
+        for (CityIndex index : indexes) {
+            index.onPut(key, oldCity, newCity);
+        }
+    }
+
+    private void notifyRemove(Integer key, City oldCity) {
+        for (CityIndex index : indexes) {
+            index.onRemove(key, oldCity);
+        }
+    }
+
+    // запись в журнал уже после compute: решение принято под блокировкой корзины, а диск (и fsync при ALWAYS)
+    // ее не держит. порядок записей совпадает с порядком изменений, пока писатель один (так устроен сервер).
+    // не записалось - изменение в памяти откатываем, если его еще никто не перебил
+    private void record(Integer key, City before, City after, Mutation mutation) throws IOException {
+        try {
+            journal.record(mutation);
+        } catch (IOException e) {
+            map.compute(key, (k, current) -> {
+                if (current != after) {
+                    return current;
+                }
+                if (before == null) {
+                    notifyRemove(k, after);
+                } else {
+                    notifyPut(k, after, before);
+                }
+                return before;
+            });
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package org.example.collection.store;
+
+import org.example.collection.models.City;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+
+// неизменяемое сбалансированное по весу дерево городов в заданном порядке.
+// изменение дает новое дерево, копируя только путь от корня (O(log n)), остальное общее со старым.
+// размеры поддеревьев в узлах дают ранг за O(log n): сколько городов меньше границы и переход к n-му, без прохода
+final class CityTree {
+    // параметры баланса как у Data.Map: поддерево не тяжелее соседнего больше чем в DELTA раз
+    private static final int DELTA = 3;
+    private static final int RATIO = 2;
+
+    // полный порядок по паре ключ-город, равны только пары с одним ключом
+    interface Order {
+        int compare(int key1, City city1, int key2, City city2);
+    }
+
+    // граница поиска: знак сравнения границы с узлом, как у compare(граница, узел)
+    interface Bound {
+        int compareTo(int key, City city);
+    }
+
+    private final Order order;
+    private final Node root;
+
+    CityTree(Order order) {
+        this(order, null);
+    }
+
+    private CityTree(Order order, Node root) {
+        this.order = order;
+        this.root = root;
+    }
+
+    int size() {
+        return size(root);
+    }
+
+    // город, на котором граница дает 0, или null
+    City find(Bound bound) {
+        Node node = root;
+        while (node != null) {
+            int c = bound.compareTo(node.key, node.city);
+            if (c < 0) {
+                node = node.left;
+            } else if (c > 0) {
+                node = node.right;
+            } else {
+                return node.city;
+            }
+        }
+        return null;
+    }
+
+    // сколько городов строго меньше границы
+    int rank(Bound bound) {
+        int rank = 0;
+        Node node = root;
+        while (node != null) {
+            if (bound.compareTo(node.key, node.city) > 0) {
+                rank += size(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return rank;
+    }
+
+    // old - город, что сейчас лежит под ключом, или null. если новый встает на то же место, узел просто заменяется
+    CityTree with(int key, City old, City city) {
+        Node base = old == null || order.compare(key, old, key, city) == 0 ? root : delete(root, key, old);
+        return new CityTree(order, insert(base, key, city));
+    }
+
+    // city - тот город, что сейчас лежит под ключом: по нему ищется место в дереве
+    CityTree without(int key, City city) {
+        return new CityTree(order, delete(root, key, city));
+    }
+
+    CityTree cleared() {
+        return new CityTree(order);
+    }
+
+    // сразу идеально сбалансированное дерево за O(n log n) на сортировку
+    CityTree rebuilt(List<Map.Entry<Integer, City>> entries) {
+        List<Map.Entry<Integer, City>> sorted = new ArrayList<>(entries);
+        sorted.sort((a, b) -> order.compare(a.getKey(), a.getValue(), b.getKey(), b.getValue()));
+        return new CityTree(order, build(sorted, 0, sorted.size()));
+    }
+
+    Iterator<City> ascending() {
+        return new Walk(false).start(root);
+    }
+
+    Iterator<City> descending() {
+        return new Walk(true).start(root);
+    }
+
+    // все пары ключ-город по порядку, рекурсия глубиной O(log n)
+    void forEach(BiConsumer<Integer, City> action) {
+        forEach(root, action);
+    }
+
+    private static void forEach(Node node, BiConsumer<Integer, City> action) {
+        if (node != null) {
+            forEach(node.left, action);
+            action.accept(node.key, node.city);
+            forEach(node.right, action);
+        }
+    }
+
+    // по возрастанию с первого города не меньше from и пока города не больше to
+    Iterator<City> range(Bound from, Bound to) {
+        Walk walk = new Walk(false);
+        walk.to = to;
+        for (Node node = root; node != null; ) {
+            if (from.compareTo(node.key, node.city) <= 0) {
+                walk.path.push(node);
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        return walk;
+    }
+
+    // по возрастанию начиная с города номер skip: спуск по размерам поддеревьев за O(log n), первые skip не проходим
+    Iterator<City> ascendingFrom(long skip) {
+        Walk walk = new Walk(false);
+        Node node = root;
+        while (node != null) {
+            int leftSize = size(node.left);
+            if (skip < leftSize) {
+                walk.path.push(node);
+                node = node.left;
+            } else if (skip == leftSize) {
+                walk.path.push(node);
+                break;
+            } else {
+                skip -= leftSize + 1;
+                node = node.right;
+            }
+        }
+        return walk;
+    }
+
+    // для тестов: размер дерева, или -1, если где-то нарушен баланс или неверен размер поддерева
+    int checkBalance() {
+        return checkBalance(root);
+    }
+
+    private static int checkBalance(Node node) {
+        if (node == null) {
+            return 0;
+        }
+        int left = checkBalance(node.left);
+        int right = checkBalance(node.right);
+        if (left < 0 || right < 0 || node.size != left + right + 1
+                || (left + right > 1 && (left > DELTA * right || right > DELTA * left))) {
+            return -1;
+        }
+        return node.size;
+    }
+
+    private static Node build(List<Map.Entry<Integer, City>> entries, int from, int to) {
+        if (from >= to) {
+            return null;
+        }
+        int middle = (from + to) >>> 1;
+        Map.Entry<Integer, City> entry = entries.get(middle);
+        return node(entry.getKey(), entry.getValue(), build(entries, from, middle), build(entries, middle + 1, to));
+    }
+
+    private Node insert(Node node, int key, City city) {
+        if (node == null) {
+            return node(key, city, null, null);
+        }
+        int c = order.compare(key, city, node.key, node.city);
+        if (c < 0) {
+            return balance(node.key, node.city, insert(node.left, key, city), node.right);
+        }
+        if (c > 0) {
+            return balance(node.key, node.city, node.left, insert(node.right, key, city));
+        }
+        return node(key, city, node.left, node.right);
+    }
+
+    private Node delete(Node node, int key, City city) {
+        if (node == null) {
+            return null;
+        }
+        int c = order.compare(key, city, node.key, node.city);
+        if (c < 0) {
+            return balance(node.key, node.city, delete(node.left, key, city), node.right);
+        }
+        if (c > 0) {
+            return balance(node.key, node.city, node.left, delete(node.right, key, city));
+        }
+        return glue(node.left, node.right);
+    }
+
+    // склейка двух поддеревьев удаленного узла: на его место встает крайний узел более тяжелого поддерева
+    private static Node glue(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.size > right.size) {
+            Node max = left;
+            while (max.right != null) {
+                max = max.right;
+            }
+            return balance(max.key, max.city, deleteMax(left), right);
+        }
+        Node min = right;
+        while (min.left != null) {
+            min = min.left;
+        }
+        return balance(min.key, min.city, left, deleteMin(right));
+    }
+
+    private static Node deleteMin(Node node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        return balance(node.key, node.city, deleteMin(node.left), node.right);
+    }
+
+    private static Node deleteMax(Node node) {
+        if (node.right == null) {
+            return node.left;
+        }
+        return balance(node.key, node.city, node.left, deleteMax(node.right));
+    }
+
+    private static Node balance(int key, City city, Node left, Node right) {
+        int leftSize = size(left);
+        int rightSize = size(right);
+        if (leftSize + rightSize <= 1) {
+            return node(key, city, left, right);
+        }
+        if (rightSize > DELTA * leftSize) {
+            return size(right.left) < RATIO * size(right.right)
+                    ? node(right.key, right.city, node(key, city, left, right.left), right.right)
+                    : node(right.left.key, right.left.city,
+                            node(key, city, left, right.left.left),
+                            node(right.key, right.city, right.left.right, right.right));
+        }
+        if (leftSize > DELTA * rightSize) {
+            return size(left.right) < RATIO * size(left.left)
+                    ? node(left.key, left.city, left.left, node(key, city, left.right, right))
+                    : node(left.right.key, left.right.city,
+                            node(left.key, left.city, left.left, left.right.left),
+                            node(key, city, left.right.right, right));
+        }
+        return node(key, city, left, right);
+    }
+
+    private static Node node(int key, City city, Node left, Node right) {
+        return new Node(key, city, left, right, size(left) + size(right) + 1);
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    // обход по стеку пути: на вершине следующий узел, у которого еще не пройдено поддерево с дальней стороны
+    private static final class Walk implements Iterator<City> {
+        private final ArrayDeque<Node> path = new ArrayDeque<>();
+        private final boolean descending;
+        private Bound to; // не null - остановиться на первом городе больше границы
+
+        private Walk(boolean descending) {
+            this.descending = descending;
+        }
+
+        private Walk start(Node node) {
+            descend(node);
+            return this;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (path.isEmpty()) {
+                return false;
+            }
+            if (to != null) {
+                Node next = path.peek();
+                if (to.compareTo(next.key, next.city) < 0) {
+                    path.clear();
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public City next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Node node = path.pop();
+            descend(descending ? node.left : node.right);
+            return node.city;
+        }
+
+        private void descend(Node node) {
+            while (node != null) {
+                path.push(node);
+                node = descending ? node.right : node.left;
+            }
+        }
+    }
+
+    private static final class Node {
+        final int key;
+        final City city;
+        final Node left;
+        final Node right;
+        final int size;
+
+        Node(int key, City city, Node left, Node right, int size) {
+            this.key = key;
+            this.city = city;
+            this.left = left;
+            this.right = right;
+            this.size = size;
+        }
+    }
+}
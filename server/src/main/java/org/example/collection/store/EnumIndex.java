@@ -0,0 +1,54 @@
+package org.example.collection.store;
+
+import org.example.collection.models.City;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// корзины ключей по значению одного поля-перечисления: последняя корзина для null.
+// удаление по значению идет только по своей корзине, остальные города не трогаем
+public class EnumIndex implements CityIndex {
+    private final CityCategory category;
+    private final List<Set<Integer>> buckets;
+
+    public EnumIndex(CityCategory category) {
+        this.category = category;
+        List<Set<Integer>> buckets = new ArrayList<>(category.size() + 1);
+        for (int i = 0; i <= category.size(); i++) {
+            buckets.add(ConcurrentHashMap.newKeySet());
+        }
+        this.buckets = List.copyOf(buckets);
+    }
+
+    @Override
+    public void onPut(Integer key, City oldCity, City newCity) {
+        if (oldCity != null) {
+            bucket(category.extract(oldCity)).remove(key);
+        }
+        bucket(category.extract(newCity)).add(key);
+    }
+
+    @Override
+    public void onRemove(Integer key, City oldCity) {
+        bucket(category.extract(oldCity)).remove(key);
+    }
+
+    @Override
+    public void onClear() {
+        for (Set<Integer> bucket : buckets) {
+            bucket.clear();
+        }
+    }
+
+    // живое представление корзины, по нему можно идти и одновременно удалять
+    public Set<Integer> keysOf(Enum<?> value) {
+        return Collections.unmodifiableSet(bucket(value));
+    }
+
+    private Set<Integer> bucket(Enum<?> value) {
+        return buckets.get(value == null ? buckets.size() - 1 : value.ordinal());
+    }
+}
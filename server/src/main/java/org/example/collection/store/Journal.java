@@ -0,0 +1,14 @@
+package org.example.collection.store;
+
+import org.example.collection.Mutation;
+
+import java.io.IOException;
+
+// куда хранилище сообщает о каждом изменении. вызывается сразу после изменения, но уже вне блокировки корзины мапы,
+// так что порядок записей совпадает с порядком изменений, только пока писатель один.
+// исключение - изменение не записано, хранилище откатит его в памяти
+public interface Journal {
+    Journal NONE = mutation -> { };
+
+    void record(Mutation mutation) throws IOException;
+}
@@ -0,0 +1,37 @@
+package org.example.collection.store;
+
+import org.example.collection.models.City;
+
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+// отсортированные ключи, чтобы удаления по диапазону трогали только нужные ключи (выборки идут по снимку)
+public class KeyIndex implements CityIndex {
+    private final ConcurrentSkipListSet<Integer> keys = new ConcurrentSkipListSet<>();
+
+    @Override
+    public void onPut(Integer key, City oldCity, City newCity) {
+        if (oldCity == null) {
+            keys.add(key);
+        }
+    }
+
+    @Override
+    public void onRemove(Integer key, City oldCity) {
+        keys.remove(key);
+    }
+
+    @Override
+    public void onClear() {
+        keys.clear();
+    }
+
+    // живые представления, по ним можно идти и одновременно удалять
+    public NavigableSet<Integer> greaterThan(int key) {
+        return keys.tailSet(key, false);
+    }
+
+    public NavigableSet<Integer> lowerThan(int key) {
+        return keys.headSet(key, false);
+    }
+}
@@ -0,0 +1,63 @@
+package org.example.collection.store;
+
+import org.example.collection.models.City;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+// держит актуальный CitySnapshot: каждое изменение подменяет корень через CAS, снимок берется за O(1).
+// писатели по разным ключам сходятся только на этом CAS, при гонке проигравший пересобирает свой путь заново
+public class SnapshotIndex implements CityIndex {
+    private final AtomicReference<CitySnapshot> current = new AtomicReference<>(CitySnapshot.EMPTY);
+    private volatile boolean paused;
+
+    @Override
+    public void onPut(Integer key, City oldCity, City newCity) {
+        change(snapshot -> snapshot.with(key, newCity));
+    }
+
+    @Override
+    public void onRemove(Integer key, City oldCity) {
+        change(snapshot -> snapshot.without(key));
+    }
+
+    @Override
+    public void onClear() {
+        change(CitySnapshot::cleared);
+    }
+
+    public CitySnapshot snapshot() {
+        return current.get();
+    }
+
+    // на время массовой загрузки не ведем дерево вовсе: миллион CAS по одному корню из всех потоков
+    // дороже, чем один раз построить его по готовому хранилищу в resume
+    public void pause() {
+        paused = true;
+    }
+
+    // звать, когда хранилище никто не меняет
+    public void resume(Iterable<Map.Entry<Integer, City>> entries) {
+        List<Map.Entry<Integer, City>> copy = new ArrayList<>();
+        for (Map.Entry<Integer, City> entry : entries) {
+            copy.add(Map.entry(entry.getKey(), entry.getValue()));
+        }
+        current.set(current.get().rebuilt(copy));
+        paused = false;
+    }
+
+    private void change(UnaryOperator<CitySnapshot> change) {
+        if (paused) {
+            return;
+        }
+        CitySnapshot before;
+        CitySnapshot after;
+        do {
+            before = current.get();
+            after = change.apply(before);
+        } while (!current.compareAndSet(before, after));
+    }
+}
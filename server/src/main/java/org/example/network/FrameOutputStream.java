@@ -0,0 +1,32 @@
+package org.example.network;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// пишем сообщение сразу после места под заголовок, чтобы потом не копировать его в кадр
+public class FrameOutputStream extends ByteArrayOutputStream {
+
+    public FrameOutputStream() {
+        this(256);
+    }
+
+    public FrameOutputStream(int initialSize) {
+        super(Math.max(initialSize, Frames.HEADER_SIZE));
+        reset();
+    }
+
+    @Override
+    public synchronized void reset() {
+        count = Frames.HEADER_SIZE; // место под длину
+    }
+
+    // готовый к отправке кадр поверх внутреннего массива, без копирования
+    public synchronized ByteBuffer toFrame() throws IOException {
+        int length = count - Frames.HEADER_SIZE;
+        Frames.checkLength(length);
+        ByteBuffer frame = ByteBuffer.wrap(buf, 0, count);
+        frame.putInt(0, length);
+        return frame;
+    }
+}
@@ -0,0 +1,27 @@
+package org.example.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+// формат кадра на проводе: [длина полезной нагрузки : int][полезная нагрузка]
+public final class Frames {
+    public static final int HEADER_SIZE = Integer.BYTES;
+    public static final int MAX_FRAME_SIZE = 64 * 1024 * 1024; // больше 64 мб это уже что-то странное
+
+    private Frames() {
+    }
+
+    // для блокирующего канала: пишем пока все не уйдет
+    public static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    public static void checkLength(int length) throws IOException {
+        if (length < 0 || length > MAX_FRAME_SIZE) {
+            throw new IOException("некорректная длина кадра: " + length);
+        }
+    }
+}
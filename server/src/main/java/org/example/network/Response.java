@@ -7,14 +7,37 @@ public class Response implements Serializable {
 
     private final String message;
     private final Object data;
+    private final boolean partial; // true - это не последний кусок ответа, за ним придут еще
+    private final String token; // не null - на сервере открыт курсор, продолжение по fetch <token>
+    private final int requestId; // номер запроса, на который это ответ
 
     public Response(String message) {
         this(message, null);
     }
 
     public Response(String message, Object data) {
+        this(message, data, false);
+    }
+
+    public Response(String message, Object data, boolean partial) {
+        this(message, data, partial, null);
+    }
+
+    public Response(String message, Object data, boolean partial, String token) {
+        this(message, data, partial, token, 0);
+    }
+
+    public Response(String message, Object data, boolean partial, String token, int requestId) {
         this.message = message;
         this.data = data;
+        this.partial = partial;
+        this.token = token;
+        this.requestId = requestId;
+    }
+
+    // тот же ответ, помеченный номером запроса
+    public Response withRequestId(int requestId) {
+        return new Response(message, data, partial, token, requestId);
     }
 
     public String getMessage() {
@@ -25,12 +48,27 @@ public class Response implements Serializable {
         return data;
     }
 
+    public boolean isPartial() {
+        return partial;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public int getRequestId() {
+        return requestId;
+    }
+
     @Override
     public String toString() {
         String dataString = data == null ? "null" : data.toString();
         return "Response{" +
-                "message='" + message + '\'' +
+                "requestId=" + requestId +
+                ", message='" + message + '\'' +
                 ", data=" + dataString +
+                (partial ? ", partial" : "") +
+                (token != null ? ", token=" + token : "") +
                 '}';
     }
 }
@@ -0,0 +1,406 @@
+package org.example.network.codec;
+
+import org.example.collection.models.City;
+import org.example.collection.models.Climate;
+import org.example.collection.models.Coordinates;
+import org.example.collection.models.Government;
+import org.example.collection.models.Human;
+import org.example.collection.models.StandardOfLiving;
+import org.example.network.FrameOutputStream;
+import org.example.network.Frames;
+import org.example.network.Request;
+import org.example.network.Response;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// компактный ручной формат: у каждого значения байт-тег, числа varint-ами, перечисления ординалами.
+// все, что кодек не знает, уходит внутрь как java-сериализация, чтобы ничего не терялось
+public class BinaryCodec implements Codec {
+    public static final byte ID = 1;
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_STRING = 1;
+    private static final int TAG_INT = 2;
+    private static final int TAG_LONG = 3;
+    private static final int TAG_FLOAT = 4;
+    private static final int TAG_DOUBLE = 5;
+    private static final int TAG_TRUE = 6;
+    private static final int TAG_FALSE = 7;
+    private static final int TAG_STRING_ARRAY = 8;
+    private static final int TAG_OBJECT_ARRAY = 9;
+    private static final int TAG_LIST = 10;
+    private static final int TAG_CITY = 11;
+    private static final int TAG_COORDINATES = 12;
+    private static final int TAG_HUMAN = 13;
+    private static final int TAG_CLIMATE = 14;
+    private static final int TAG_GOVERNMENT = 15;
+    private static final int TAG_STANDARD_OF_LIVING = 16;
+    private static final int TAG_SERIALIZED = 127;
+
+    // биты наличия полей города, чтобы null-ы вообще не занимали места
+    private static final int CITY_ID = 1;
+    private static final int CITY_NAME = 1 << 1;
+    private static final int CITY_COORDINATES = 1 << 2;
+    private static final int CITY_AREA = 1 << 3;
+    private static final int CITY_POPULATION = 1 << 4;
+    private static final int CITY_METERS = 1 << 5;
+    private static final int CITY_CLIMATE = 1 << 6;
+    private static final int CITY_GOVERNMENT = 1 << 7;
+    private static final int CITY_STANDARD = 1 << 8;
+    private static final int CITY_GOVERNOR = 1 << 9;
+
+    // флаги ответа, идут первыми в кадре, за ними номер запроса
+    private static final int RESPONSE_PARTIAL = 1;
+    private static final int RESPONSE_TOKEN = 1 << 1;
+
+    private static final Climate[] CLIMATES = Climate.values();
+    private static final Government[] GOVERNMENTS = Government.values();
+    private static final StandardOfLiving[] STANDARDS = StandardOfLiving.values();
+
+    // писатели общие для всех потоков, в том числе виртуальных, которых слишком много, чтобы держать по буферу на каждый
+    private static final int POOLED_WRITERS = 16;
+
+    private final BlockingQueue<BinaryWriter> writers = new ArrayBlockingQueue<>(POOLED_WRITERS);
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "binary";
+    }
+
+    @Override
+    public void writeRequest(Request request, FrameOutputStream out) throws IOException {
+        BinaryWriter writer = borrowWriter();
+        try {
+            writer.reset();
+            writer.writeVarInt(request.getRequestId());
+            writer.writeString(request.getCommandName());
+            writeValue(writer, request.getArguments());
+            writer.writeTo(out);
+        } finally {
+            writers.offer(writer);
+        }
+    }
+
+    @Override
+    public Request readRequest(ByteBuffer payload) throws IOException {
+        BinaryReader reader = new BinaryReader(payload);
+        int requestId = reader.readVarInt();
+        String commandName = reader.readString();
+        Object arguments = readValue(reader);
+        return new Request(commandName, arguments, requestId);
+    }
+
+    @Override
+    public void writeResponse(Response response, FrameOutputStream out) throws IOException {
+        BinaryWriter writer = borrowWriter();
+        try {
+            writer.reset();
+            writeResponse(writer, response);
+            writer.writeTo(out);
+        } finally {
+            writers.offer(writer);
+        }
+    }
+
+    // ответ собирается сразу в кадр: длина пишется в место, оставленное в начале буфера, и буфер уходит в сессию
+    @Override
+    public ByteBuffer encodeResponse(Response response) throws IOException {
+        BinaryWriter writer = borrowWriter();
+        try {
+            writer.beginFrame();
+            writeResponse(writer, response);
+            return writer.takeFrame();
+        } finally {
+            writers.offer(writer);
+        }
+    }
+
+    private void writeResponse(BinaryWriter writer, Response response) throws IOException {
+        writer.writeVarInt((response.isPartial() ? RESPONSE_PARTIAL : 0)
+                | (response.getToken() != null ? RESPONSE_TOKEN : 0));
+        writer.writeVarInt(response.getRequestId());
+        if (response.getToken() != null) {
+            writer.writeString(response.getToken());
+        }
+        writer.writeString(response.getMessage());
+        writeValue(writer, response.getData());
+    }
+
+    @Override
+    public Response readResponse(ByteBuffer payload) throws IOException {
+        BinaryReader reader = new BinaryReader(payload);
+        int flags = reader.readVarInt();
+        int requestId = reader.readVarInt();
+        String token = (flags & RESPONSE_TOKEN) != 0 ? reader.readString() : null;
+        String message = reader.readString();
+        Object data = readValue(reader);
+        return new Response(message, data, (flags & RESPONSE_PARTIAL) != 0, token, requestId);
+    }
+
+    // номер запроса лежит сразу за флагами, меняем только его, остальные байты копируются как есть
+    @Override
+    public ByteBuffer renumberResponse(ByteBuffer frame, int requestId) throws IOException {
+        ByteBuffer payload = frame.duplicate();
+        payload.position(payload.position() + Frames.HEADER_SIZE);
+        BinaryReader reader = new BinaryReader(payload);
+        int flags = reader.readVarInt();
+        reader.readVarInt();
+        BinaryWriter writer = new BinaryWriter();
+        writer.writeVarInt(flags);
+        writer.writeVarInt(requestId);
+        FrameOutputStream out = new FrameOutputStream(Frames.HEADER_SIZE + writer.size() + payload.remaining());
+        writer.writeTo(out);
+        out.write(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+        return out.toFrame();
+    }
+
+    // пул пуст - просто новый писатель, лишний при возврате не поместится в пул и уйдет в мусор
+    private BinaryWriter borrowWriter() {
+        BinaryWriter writer = writers.poll();
+        return writer != null ? writer : new BinaryWriter();
+    }
+
+    private void writeValue(BinaryWriter writer, Object value) throws IOException {
+        if (value == null) {
+            writer.writeByte(TAG_NULL);
+        } else if (value instanceof String) {
+            writer.writeByte(TAG_STRING);
+            writer.writeString((String) value);
+        } else if (value instanceof Integer) {
+            writer.writeByte(TAG_INT);
+            writer.writeSignedInt((Integer) value);
+        } else if (value instanceof Long) {
+            writer.writeByte(TAG_LONG);
+            writer.writeSignedLong((Long) value);
+        } else if (value instanceof Float) {
+            writer.writeByte(TAG_FLOAT);
+            writer.writeFloat((Float) value);
+        } else if (value instanceof Double) {
+            writer.writeByte(TAG_DOUBLE);
+            writer.writeDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            writer.writeByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+        } else if (value instanceof String[]) {
+            String[] strings = (String[]) value;
+            writer.writeByte(TAG_STRING_ARRAY);
+            writer.writeVarInt(strings.length);
+            for (String s : strings) {
+                writer.writeString(s);
+            }
+        } else if (value instanceof Object[]) {
+            Object[] objects = (Object[]) value;
+            writer.writeByte(TAG_OBJECT_ARRAY);
+            writer.writeVarInt(objects.length);
+            for (Object o : objects) {
+                writeValue(writer, o);
+            }
+        } else if (value instanceof List) {
+            List<?> items = (List<?>) value;
+            writer.writeByte(TAG_LIST);
+            writer.writeVarInt(items.size());
+            for (Object item : items) {
+                writeValue(writer, item);
+            }
+        } else if (value instanceof City) {
+            writer.writeByte(TAG_CITY);
+            writeCachedCity(writer, (City) value);
+        } else if (value instanceof Coordinates) {
+            writer.writeByte(TAG_COORDINATES);
+            writeCoordinates(writer, (Coordinates) value);
+        } else if (value instanceof Human) {
+            writer.writeByte(TAG_HUMAN);
+            writer.writeString(((Human) value).getName());
+        } else if (value instanceof Climate) {
+            writer.writeByte(TAG_CLIMATE);
+            writer.writeVarInt(((Climate) value).ordinal());
+        } else if (value instanceof Government) {
+            writer.writeByte(TAG_GOVERNMENT);
+            writer.writeVarInt(((Government) value).ordinal());
+        } else if (value instanceof StandardOfLiving) {
+            writer.writeByte(TAG_STANDARD_OF_LIVING);
+            writer.writeVarInt(((StandardOfLiving) value).ordinal());
+        } else if (value instanceof Serializable) {
+            writer.writeByte(TAG_SERIALIZED);
+            writer.writeBytes(serialize(value));
+        } else {
+            throw new IOException("бинарный кодек не умеет кодировать " + value.getClass().getName());
+        }
+    }
+
+    private Object readValue(BinaryReader reader) throws IOException {
+        int tag = reader.readByte();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return reader.readString();
+            case TAG_INT:
+                return reader.readSignedInt();
+            case TAG_LONG:
+                return reader.readSignedLong();
+            case TAG_FLOAT:
+                return reader.readFloat();
+            case TAG_DOUBLE:
+                return reader.readDouble();
+            case TAG_TRUE:
+                return Boolean.TRUE;
+            case TAG_FALSE:
+                return Boolean.FALSE;
+            case TAG_STRING_ARRAY: {
+                String[] strings = new String[readLength(reader)];
+                for (int i = 0; i < strings.length; i++) {
+                    strings[i] = reader.readString();
+                }
+                return strings;
+            }
+            case TAG_OBJECT_ARRAY: {
+                Object[] objects = new Object[readLength(reader)];
+                for (int i = 0; i < objects.length; i++) {
+                    objects[i] = readValue(reader);
+                }
+                return objects;
+            }
+            case TAG_LIST: {
+                int size = readLength(reader);
+                List<Object> items = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    items.add(readValue(reader));
+                }
+                return items;
+            }
+            case TAG_CITY:
+                return readCity(reader);
+            case TAG_COORDINATES:
+                return readCoordinates(reader);
+            case TAG_HUMAN:
+                return new Human(reader.readString());
+            case TAG_CLIMATE:
+                return enumValue(CLIMATES, reader.readVarInt());
+            case TAG_GOVERNMENT:
+                return enumValue(GOVERNMENTS, reader.readVarInt());
+            case TAG_STANDARD_OF_LIVING:
+                return enumValue(STANDARDS, reader.readVarInt());
+            case TAG_SERIALIZED:
+                return deserialize(reader.readBytes());
+            default:
+                throw new IOException("неизвестный тег значения: " + tag);
+        }
+    }
+
+    // город кодируется один раз, дальше в каждый ответ копируются готовые байты
+    private void writeCachedCity(BinaryWriter writer, City city) {
+        byte[] encoded = city.getEncoded();
+        if (encoded == null) {
+            int start = writer.size();
+            writeCity(writer, city);
+            city.setEncoded(writer.copyOfRange(start, writer.size()));
+            return;
+        }
+        writer.writeRaw(encoded);
+    }
+
+    private void writeCity(BinaryWriter writer, City city) {
+        int mask = 0;
+        if (city.getId() != null) mask |= CITY_ID;
+        if (city.getName() != null) mask |= CITY_NAME;
+        if (city.getCoordinates() != null) mask |= CITY_COORDINATES;
+        if (city.getArea() != null) mask |= CITY_AREA;
+        if (city.getPopulation() != null) mask |= CITY_POPULATION;
+        if (city.getMetersAboveSeaLevel() != null) mask |= CITY_METERS;
+        if (city.getClimate() != null) mask |= CITY_CLIMATE;
+        if (city.getGovernment() != null) mask |= CITY_GOVERNMENT;
+        if (city.getStandardOfLiving() != null) mask |= CITY_STANDARD;
+        if (city.getGovernor() != null) mask |= CITY_GOVERNOR;
+        writer.writeVarInt(mask);
+
+        if ((mask & CITY_ID) != 0) writer.writeSignedInt(city.getId());
+        if ((mask & CITY_NAME) != 0) writer.writeString(city.getName());
+        if ((mask & CITY_COORDINATES) != 0) writeCoordinates(writer, city.getCoordinates());
+        if ((mask & CITY_AREA) != 0) writer.writeSignedInt(city.getArea());
+        if ((mask & CITY_POPULATION) != 0) writer.writeSignedLong(city.getPopulation());
+        if ((mask & CITY_METERS) != 0) writer.writeFloat(city.getMetersAboveSeaLevel());
+        if ((mask & CITY_CLIMATE) != 0) writer.writeVarInt(city.getClimate().ordinal());
+        if ((mask & CITY_GOVERNMENT) != 0) writer.writeVarInt(city.getGovernment().ordinal());
+        if ((mask & CITY_STANDARD) != 0) writer.writeVarInt(city.getStandardOfLiving().ordinal());
+        if ((mask & CITY_GOVERNOR) != 0) writer.writeString(city.getGovernor().getName());
+    }
+
+    private City readCity(BinaryReader reader) throws IOException {
+        int mask = reader.readVarInt();
+        City city = new City();
+        if ((mask & CITY_ID) != 0) city.setId(reader.readSignedInt());
+        if ((mask & CITY_NAME) != 0) city.setName(reader.readString());
+        if ((mask & CITY_COORDINATES) != 0) city.setCoordinates(readCoordinates(reader));
+        if ((mask & CITY_AREA) != 0) city.setArea(reader.readSignedInt());
+        if ((mask & CITY_POPULATION) != 0) city.setPopulation(reader.readSignedLong());
+        if ((mask & CITY_METERS) != 0) city.setMetersAboveSeaLevel(reader.readFloat());
+        if ((mask & CITY_CLIMATE) != 0) city.setClimate(enumValue(CLIMATES, reader.readVarInt()));
+        if ((mask & CITY_GOVERNMENT) != 0) city.setGovernment(enumValue(GOVERNMENTS, reader.readVarInt()));
+        if ((mask & CITY_STANDARD) != 0) city.setStandardOfLiving(enumValue(STANDARDS, reader.readVarInt()));
+        if ((mask & CITY_GOVERNOR) != 0) city.setGovernor(new Human(reader.readString()));
+        return city;
+    }
+
+    // x и y по контракту не null, но кодек не должен падать на кривых данных: младшие биты говорят что есть
+    private void writeCoordinates(BinaryWriter writer, Coordinates coordinates) {
+        int mask = (coordinates.getX() != null ? 1 : 0) | (coordinates.getY() != null ? 2 : 0);
+        writer.writeByte(mask);
+        if (coordinates.getX() != null) writer.writeSignedInt(coordinates.getX());
+        if (coordinates.getY() != null) writer.writeSignedLong(coordinates.getY());
+    }
+
+    private Coordinates readCoordinates(BinaryReader reader) throws IOException {
+        int mask = reader.readByte();
+        Integer x = (mask & 1) != 0 ? reader.readSignedInt() : null;
+        Long y = (mask & 2) != 0 ? reader.readSignedLong() : null;
+        return new Coordinates(x, y);
+    }
+
+    // число элементов из чужого кадра: каждый элемент занимает хотя бы байт, так что больше, чем осталось байт,
+    // их быть не может. иначе кадр в десяток байт заставил бы выделить массив на 2^31 элементов
+    private static int readLength(BinaryReader reader) throws IOException {
+        int length = reader.readVarInt();
+        if (length < 0 || length > reader.remaining()) {
+            throw new IOException("некорректная длина: " + length);
+        }
+        return length;
+    }
+
+    private static <E extends Enum<E>> E enumValue(E[] values, int ordinal) throws IOException {
+        if (ordinal < 0 || ordinal >= values.length) {
+            throw new IOException("неизвестное значение перечисления: " + ordinal);
+        }
+        return values[ordinal];
+    }
+
+    private static byte[] serialize(Object value) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(value);
+        }
+        return bos.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return ois.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("неизвестный класс во вложенной сериализации: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.example.network.codec;
+
+import org.example.network.FrameOutputStream;
+import org.example.network.Request;
+import org.example.network.Response;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// как Request/Response превращаются в байты кадра и обратно.
+// какой кодек будет у соединения, клиент и сервер договариваются сразу после подключения
+public interface Codec {
+    byte getId();
+
+    String getName();
+
+    void writeRequest(Request request, FrameOutputStream out) throws IOException;
+
+    Request readRequest(ByteBuffer payload) throws IOException;
+
+    void writeResponse(Response response, FrameOutputStream out) throws IOException;
+
+    Response readResponse(ByteBuffer payload) throws IOException;
+
+    // готовый к отправке кадр ответа вместе с длиной. кодек может собрать его прямо в своем буфере и отдать без копии
+    default ByteBuffer encodeResponse(Response response) throws IOException {
+        FrameOutputStream out = new FrameOutputStream();
+        writeResponse(response, out);
+        return out.toFrame();
+    }
+
+    // готовый кадр ответа (вместе с длиной) с другим номером запроса, остальное не разбирается и не кодируется заново.
+    // null - кодек так не умеет, ответ придется закодировать еще раз
+    default ByteBuffer renumberResponse(ByteBuffer frame, int requestId) throws IOException {
+        return null;
+    }
+}
@@ -0,0 +1,62 @@
+package org.example.network.codec;
+
+import org.example.network.FrameOutputStream;
+import org.example.network.Request;
+import org.example.network.Response;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+
+// старый добрый ObjectOutputStream, остается запасным вариантом для тех, кто не умеет бинарный
+public class SerializationCodec implements Codec {
+    public static final byte ID = 0;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "serialization";
+    }
+
+    @Override
+    public void writeRequest(Request request, FrameOutputStream out) throws IOException {
+        writeObject(request, out);
+    }
+
+    @Override
+    public Request readRequest(ByteBuffer payload) throws IOException {
+        return (Request) readObject(payload);
+    }
+
+    @Override
+    public void writeResponse(Response response, FrameOutputStream out) throws IOException {
+        writeObject(response, out);
+    }
+
+    @Override
+    public Response readResponse(ByteBuffer payload) throws IOException {
+        return (Response) readObject(payload);
+    }
+
+    private static void writeObject(Object obj, FrameOutputStream out) throws IOException {
+        try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+            oos.writeObject(obj);
+        }
+    }
+
+    private static Object readObject(ByteBuffer payload) throws IOException {
+        try (ByteArrayInputStream bis = new ByteArrayInputStream(payload.array(),
+                payload.arrayOffset() + payload.position(), payload.remaining());
+             ObjectInputStream ois = new ObjectInputStream(bis)) {
+            return ois.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("не удалось десериализовать сообщение: " + e.getMessage(), e);
+        }
+    }
+}
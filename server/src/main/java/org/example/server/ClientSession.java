@@ -0,0 +1,201 @@
+package org.example.server;
+
+import org.example.network.FrameReader;
+import org.example.network.Request;
+import org.example.network.codec.Codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// состояние одного клиента, висит attachment-ом на его SelectionKey.
+// читает и пишет в сокет только поток селектора, воркеры лишь кладут готовые кадры в очередь
+public class ClientSession {
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final String address;
+    private final FrameReader frameReader = new FrameReader();
+    private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer[] gather = new ByteBuffer[64]; // кадры для одной записи в сокет, трогает только селектор
+    private volatile Codec codec; // null пока клиент не прислал рукопожатие
+    private final AtomicLong backlog = new AtomicLong(); // байт в очереди, еще не ушедших в сокет
+    private final AtomicReference<Runnable> parked = new AtomicReference<>(); // что продолжить, когда очередь разгрузится
+    // запросы, присланные не дожидаясь ответов на предыдущие; выполняются строго по одному и по порядку
+    private final Queue<Request> requests = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedRequests = new AtomicInteger(); // размер requests, у очереди size() - O(n)
+    private final AtomicBoolean readPaused = new AtomicBoolean(); // OP_READ снят, пока очередь запросов не разгрузится
+    private final AtomicBoolean draining = new AtomicBoolean();
+    // открытые курсоры в порядке последнего чтения, самый давний - первый
+    private final LinkedHashMap<String, CursorManager.Cursor> cursors = new LinkedHashMap<>(16, 0.75f, true);
+
+    public ClientSession(SocketChannel channel, SelectionKey key, String address) {
+        this.channel = channel;
+        this.key = key;
+        this.address = address;
+    }
+
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    public SelectionKey getKey() {
+        return key;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public FrameReader getFrameReader() {
+        return frameReader;
+    }
+
+    public Codec getCodec() {
+        return codec;
+    }
+
+    public void setCodec(Codec codec) {
+        this.codec = codec;
+    }
+
+    public void enqueue(ByteBuffer frame) {
+        backlog.addAndGet(frame.remaining());
+        outbound.add(frame);
+    }
+
+    public long getBacklog() {
+        return backlog.get();
+    }
+
+    // работа над этим клиентом ждет, пока он разгребет очередь
+    public void park(Runnable resume) {
+        parked.set(resume);
+    }
+
+    // вернуть отложенное, если очередь уже достаточно разгрузилась; забрать его может только один
+    public Runnable unparkIfBelow(long lowWater) {
+        if (parked.get() == null || backlog.get() >= lowWater) {
+            return null;
+        }
+        return parked.getAndSet(null);
+    }
+
+    public void addRequest(Request request) {
+        requests.add(request);
+        queuedRequests.incrementAndGet();
+    }
+
+    public Request nextRequest() {
+        Request request = requests.poll();
+        if (request != null) {
+            queuedRequests.decrementAndGet();
+        }
+        return request;
+    }
+
+    public int getQueuedRequests() {
+        return queuedRequests.get();
+    }
+
+    // клиент шлет запросы быстрее, чем их выполняют: больше из сокета не читаем
+    public void pauseReading() {
+        readPaused.set(true);
+    }
+
+    // true - очередь разгрузилась и чтение пора вернуть; вернуть его может только один
+    public boolean resumeReadingIfBelow(int lowWater) {
+        return readPaused.get() && queuedRequests.get() < lowWater && readPaused.compareAndSet(true, false);
+    }
+
+    public boolean hasRequests() {
+        return !requests.isEmpty();
+    }
+
+    // true - вызвавший стал единственным, кто сейчас выполняет запросы этого клиента
+    public boolean startDraining() {
+        return draining.compareAndSet(false, true);
+    }
+
+    public void stopDraining() {
+        draining.set(false);
+    }
+
+    // пишет сколько сокет примет, true если очередь опустела и OP_WRITE больше не нужен.
+    // несколько кадров из головы очереди уходят одним gathering write, а не системным вызовом на каждый
+    public boolean flush() throws IOException {
+        while (true) {
+            int count = 0;
+            for (ByteBuffer frame : outbound) { // голову очереди забирает только поток селектора, она не сдвинется
+                gather[count++] = frame;
+                if (count == gather.length) {
+                    break;
+                }
+            }
+            if (count == 0) {
+                return true;
+            }
+            backlog.addAndGet(-channel.write(gather, 0, count));
+            for (int i = 0; i < count; i++) {
+                boolean written = !gather[i].hasRemaining();
+                gather[i] = null;
+                if (!written) {
+                    Arrays.fill(gather, i + 1, count, null);
+                    return false; // буфер сокета забит, допишем когда селектор скажет
+                }
+                outbound.poll();
+            }
+        }
+    }
+
+    // сверх max вытесняется курсор, который дольше всех не читали
+    public synchronized void addCursor(String token, CursorManager.Cursor cursor, int max) {
+        cursors.put(token, cursor);
+        Iterator<String> eldest = cursors.keySet().iterator();
+        while (cursors.size() > max) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    // курсор, если он есть и читался не раньше notBefore; истекший заодно удаляется
+    public synchronized CursorManager.Cursor getCursor(String token, long notBefore) {
+        CursorManager.Cursor cursor = cursors.get(token);
+        if (cursor == null) {
+            return null;
+        }
+        if (cursor.getLastAccess() < notBefore) {
+            cursors.remove(token);
+            return null;
+        }
+        cursor.touch();
+        return cursor;
+    }
+
+    public synchronized void removeCursor(String token) {
+        cursors.remove(token);
+    }
+
+    // закрыть все, что не читали с deadline; возвращает сколько осталось открытыми
+    public synchronized int expireCursors(long deadline) {
+        cursors.values().removeIf(cursor -> cursor.getLastAccess() < deadline);
+        return cursors.size();
+    }
+
+    public synchronized void clearCursors() {
+        cursors.clear();
+    }
+
+    public boolean isOpen() {
+        return channel.isOpen() && key.isValid();
+    }
+}
@@ -0,0 +1,106 @@
+package org.example.server;
+
+import org.example.network.Response;
+import org.example.server.commands.StreamedResponse;
+
+import java.security.SecureRandom;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// курсоры по большим ответам: первый кусок уходит сразу вместе с токеном, остальное клиент
+// дочитывает через fetch. курсоры живут в сессии клиента, их не больше maxPerClient на клиента
+// (лишний вытесняет самый давно читанный), и без чтения дольше idleTimeoutMs они закрываются
+public class CursorManager {
+    private final long idleTimeoutMs;
+    private final int maxPerClient;
+    private final SecureRandom random = new SecureRandom();
+    private final Set<ClientSession> sessions = ConcurrentHashMap.newKeySet(); // у кого есть открытые курсоры
+    private final ScheduledExecutorService sweeper;
+
+    public CursorManager(long idleTimeoutMs, int maxPerClient) {
+        if (idleTimeoutMs <= 0 || maxPerClient <= 0) {
+            throw new IllegalArgumentException("время жизни курсора и их число на клиента должны быть больше нуля");
+        }
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.maxPerClient = maxPerClient;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cursor-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(idleTimeoutMs / 2, 100);
+        sweeper.scheduleWithFixedDelay(this::sweep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    // если все влезло в первый кусок, курсор не заводится и токена в ответе нет
+    public Response open(ClientSession session, StreamedResponse stream) {
+        Response first = stream.nextChunk();
+        if (!stream.hasNext()) {
+            return withToken(first, null);
+        }
+        String token = newToken();
+        session.addCursor(token, new Cursor(stream), maxPerClient);
+        sessions.add(session);
+        return withToken(first, token);
+    }
+
+    public Response fetch(ClientSession session, String token) {
+        Cursor cursor = session.getCursor(token, System.currentTimeMillis() - idleTimeoutMs);
+        if (cursor == null) {
+            return new Response("курсора " + token + " нет: он уже дочитан, истек или вытеснен более новым");
+        }
+        Response chunk = cursor.stream.nextChunk();
+        if (!cursor.stream.hasNext()) {
+            session.removeCursor(token);
+            return withToken(chunk, null);
+        }
+        return withToken(chunk, token);
+    }
+
+    // клиент отключился - его курсоры больше никому не нужны
+    public void forget(ClientSession session) {
+        sessions.remove(session);
+        session.clearCursors();
+    }
+
+    public void close() {
+        sweeper.shutdownNow();
+    }
+
+    private void sweep() {
+        long deadline = System.currentTimeMillis() - idleTimeoutMs;
+        for (ClientSession session : sessions) {
+            if (session.expireCursors(deadline) == 0) {
+                sessions.remove(session);
+            }
+        }
+    }
+
+    private String newToken() {
+        return Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong());
+    }
+
+    private static Response withToken(Response chunk, String token) {
+        return new Response(chunk.getMessage(), chunk.getData(), false, token);
+    }
+
+    public static final class Cursor {
+        private final StreamedResponse stream;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        private Cursor(StreamedResponse stream) {
+            this.stream = stream;
+        }
+
+        long getLastAccess() {
+            return lastAccess;
+        }
+
+        void touch() {
+            lastAccess = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.example.server;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// на чем выполняются команды клиентов
+public enum ExecutionMode {
+    PLATFORM, // фиксированный пул обычных потоков
+    VIRTUAL;  // по виртуальному потоку на задачу, нужна java 21+
+
+    public static ExecutionMode parse(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("неизвестный режим выполнения: " + value + ", есть platform, virtual");
+        }
+    }
+
+    // threads - размер пула для PLATFORM; maxConcurrency - сколько задач VIRTUAL выполняется одновременно, 0 - без ограничения.
+    // если виртуальных потоков в этой jvm нет, откатываемся на обычный пул
+    public ExecutorService createExecutor(int threads, int maxConcurrency) {
+        if (this == VIRTUAL) {
+            ExecutorService virtual = newVirtualThreadExecutor();
+            if (virtual != null) {
+                return maxConcurrency > 0 ? new LimitedExecutor(virtual, maxConcurrency) : virtual;
+            }
+            System.err.println("виртуальные потоки есть только с java 21, а тут " + Runtime.version().feature()
+                    + " - работаем на пуле из " + threads + " потоков");
+        }
+        return Executors.newFixedThreadPool(threads);
+    }
+
+    // сервер собирается и под 17, поэтому достаем через отражение
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    // не больше limit задач сразу, остальные ждут разрешения уже внутри своего потока.
+    // для виртуальных потоков такое ожидание почти ничего не стоит
+    private static class LimitedExecutor extends AbstractExecutorService {
+        private final ExecutorService delegate;
+        private final Semaphore permits;
+
+        LimitedExecutor(ExecutorService delegate, int limit) {
+            this.delegate = delegate;
+            this.permits = new Semaphore(limit);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            delegate.execute(() -> {
+                permits.acquireUninterruptibly();
+                try {
+                    command.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
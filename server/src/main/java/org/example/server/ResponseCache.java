@@ -0,0 +1,94 @@
+package org.example.server;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// готовые кадры ответов на чтения. в ключе кодек, команда, аргументы и версия коллекции, так что после
+// любого изменения старые записи просто перестают находиться и вытесняются как давно не нужные.
+// размер ограничен суммой байт, вытесняется то, что дольше всех не читали
+public class ResponseCache {
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final LinkedHashMap<Key, List<ByteBuffer>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Key, Long> sizes = new HashMap<>();
+    private long bytes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ResponseCache(long maxBytes, long maxEntryBytes) {
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = Math.min(maxEntryBytes, maxBytes);
+    }
+
+    public static Key key(String codec, String command, Object arguments, long version) {
+        return new Key(new Object[]{codec, command, arguments, version});
+    }
+
+    // ответ больше этого не кэшируется
+    public long getMaxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    // кадры отдаются как есть, менять их позицию нельзя - только читать через duplicate
+    public synchronized List<ByteBuffer> get(Key key) {
+        List<ByteBuffer> frames = entries.get(key);
+        if (frames == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return frames;
+    }
+
+    public synchronized void put(Key key, List<ByteBuffer> frames, long size) {
+        if (size > maxEntryBytes || entries.containsKey(key)) {
+            return;
+        }
+        entries.put(key, List.copyOf(frames));
+        sizes.put(key, size);
+        bytes += size;
+        Iterator<Key> eldest = entries.keySet().iterator();
+        while (bytes > maxBytes) {
+            Key evicted = eldest.next();
+            eldest.remove();
+            bytes -= sizes.remove(evicted);
+            evictions.increment();
+        }
+    }
+
+    public synchronized String getStats() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return String.format("попаданий: %d, промахов: %d (%.1f%% попаданий), вытеснено: %d, записей: %d, занято %d из %d байт",
+                hitCount, total - hitCount, total == 0 ? 0.0 : 100.0 * hitCount / total,
+                evictions.sum(), entries.size(), bytes, maxBytes);
+    }
+
+    // аргументы сравниваются поэлементно, массивы внутри массивов тоже: склейка в строку путала ["a, b"] и ["a", "b"]
+    public static final class Key {
+        private final Object[] parts;
+        private final int hash;
+
+        private Key(Object[] parts) {
+            this.parts = parts;
+            this.hash = Arrays.deepHashCode(parts);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && hash == ((Key) o).hash && Arrays.deepEquals(parts, ((Key) o).parts);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
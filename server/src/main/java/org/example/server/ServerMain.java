@@ -1,26 +1,31 @@
 package org.example.server;
 
 import org.example.collection.CollectionManager;
+import org.example.collection.SyncPolicy;
 import org.example.collection.exceptions.ValidationException;
+import org.example.network.FrameReader;
 import org.example.network.Request;
 import org.example.network.Response;
+import org.example.network.codec.Codec;
+import org.example.network.codec.Codecs;
 import org.example.server.commands.*;
 
 import java.io.IOException;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.logging.FileHandler;
@@ -30,18 +35,35 @@ import java.util.logging.SimpleFormatter;
 
 public class ServerMain {
     private static final Logger logger = Logger.getLogger(ServerMain.class.getName());
+    // границы очереди одного клиента для потоковых ответов
+    private static final long HIGH_WATER = 1 << 20;
+    private static final long LOW_WATER = 256 << 10;
+    private static final int REQUESTS_PER_TURN = 64;
+    // сколько запросов клиент может прислать наперед: выше - перестаем читать его сокет, ниже LOW - читаем снова
+    private static final int REQUESTS_HIGH_WATER = 1024;
+    private static final int REQUESTS_LOW_WATER = 256;
     private final int port;
     private final CollectionManager collectionManager;
     private final Map<String, Command> commands;
+    private final CursorManager cursorManager;
+    private final ResponseCache responseCache; // null - кэш выключен
     private volatile boolean isRunning;
-    private final ExecutorService executorService; // пул потоков для обработки клиентов
+    private final ExecutorService executorService; // на нем выполняются команды, см. ExecutionMode
+    // все изменения коллекции идут через один поток по очереди, чтения его не ждут
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> new Thread(r, "collection-writer"));
+    private final Queue<ClientSession> pendingWrites = new ConcurrentLinkedQueue<>(); // сессии с готовыми ответами
+    private final Queue<ClientSession> pendingReads = new ConcurrentLinkedQueue<>(); // сессии, которым вернуть OP_READ
+    private Selector selector;
 
-    public ServerMain(int port, CollectionManager collectionManager, Map<String, Command> commands) {
+    public ServerMain(int port, CollectionManager collectionManager, Map<String, Command> commands,
+                      CursorManager cursorManager, ExecutorService executorService, ResponseCache responseCache) {
         this.port = port;
         this.collectionManager = collectionManager;
         this.commands = commands;
+        this.cursorManager = cursorManager;
+        this.responseCache = responseCache;
         this.isRunning = true;
-        this.executorService = Executors.newFixedThreadPool(10); // размер пула потоков
+        this.executorService = executorService;
         setupLogger();
     }
 
@@ -64,14 +86,42 @@ public class ServerMain {
         }
 
         try {
-            CollectionManager collectionManager = new CollectionManager();
+            // -Dwal.sync=always|interval|none, -Dwal.syncIntervalMs=100,
+            // -Dsave.maxDelayMs=60000 -Dsave.maxPending=10000 - как часто журнал сворачивается в снимок
+            CollectionManager collectionManager = new CollectionManager(
+                    SyncPolicy.parse(System.getProperty("wal.sync", "interval")),
+                    Long.getLong("wal.syncIntervalMs", 100),
+                    Long.getLong("save.maxDelayMs", 60_000),
+                    Integer.getInteger("save.maxPending", 10_000));
+            collectionManager.setPrettyPrint(Boolean.parseBoolean(System.getProperty("save.pretty", "true")));
+            collectionManager.setAggregateSelfCheck(Boolean.getBoolean("aggregates.selfcheck"));
+            // -Dload.strict=true - повторный id в файле останавливает запуск, по умолчанию остается последний
+            collectionManager.setStrictLoad(Boolean.getBoolean("load.strict"));
             collectionManager.loadCollection(args[0]);
+            // по ctrl+c журнал должен успеть сброситься на диск
+            Runtime.getRuntime().addShutdownHook(new Thread(collectionManager::shutdownSaveExecutor));
+
+            // -Dcursor.idleMs=60000 -Dcursor.maxPerClient=16 - сколько живет непрочитанный курсор и сколько их на клиента
+            CursorManager cursorManager = new CursorManager(
+                    Long.getLong("cursor.idleMs", 60_000),
+                    Integer.getInteger("cursor.maxPerClient", 16));
+
+            // -Dcache.maxBytes=33554432 -Dcache.maxEntryBytes=1048576 - кэш готовых ответов на чтения, 0 - выключен
+            long cacheBytes = Long.getLong("cache.maxBytes", 32 << 20);
+            ResponseCache responseCache = cacheBytes > 0
+                    ? new ResponseCache(cacheBytes, Long.getLong("cache.maxEntryBytes", HIGH_WATER))
+                    : null;
 
             Map<String, Command> commands = new HashMap<>();
-            registerCommands(commands, collectionManager);
+            registerCommands(commands, collectionManager, cursorManager, responseCache);
 
-            new ServerMain(12345, collectionManager, commands).start();
-        } catch (IOException | ValidationException e) {
+            // -Dexec.mode=platform|virtual -Dexec.threads=10 -Dexec.maxConcurrency=0 - на чем выполнять команды;
+            // запросы одного клиента и так идут по очереди, так что в virtual потоков не больше, чем занятых клиентов
+            ExecutorService executorService = ExecutionMode.parse(System.getProperty("exec.mode", "platform"))
+                    .createExecutor(Integer.getInteger("exec.threads", 10), Integer.getInteger("exec.maxConcurrency", 0));
+
+            new ServerMain(12345, collectionManager, commands, cursorManager, executorService, responseCache).start();
+        } catch (IOException | ValidationException | IllegalArgumentException e) {
             System.err.println("Failed to start server: " + e.getMessage());
             System.exit(1);
         }
@@ -80,17 +130,22 @@ public class ServerMain {
     public void start() {
         try (ServerSocketChannel serverChannel = ServerSocketChannel.open();
              Selector selector = Selector.open()) {
+            this.selector = selector;
             serverChannel.bind(new InetSocketAddress(port));
             serverChannel.configureBlocking(false);
             serverChannel.register(selector, SelectionKey.OP_ACCEPT);
 
             logger.info("Server started on port " + port);
 
+            // весь ввод-вывод крутится в этом потоке, в пул уходят только уже разобранные запросы
             while (isRunning) {
-                selector.select(500); // неблокирующая операция ждет до 500 мс ака 50 сек событий
+                selector.select(500); // ждем события до 500 мс
                 if (!isRunning) { // проверка не был ли сервер остановлен
                     break;
                 }
+                processPendingWrites();
+                processPendingReads();
+
                 Set<SelectionKey> keys = selector.selectedKeys();
                 Iterator<SelectionKey> iterator = keys.iterator();
 
@@ -98,21 +153,28 @@ public class ServerMain {
                     SelectionKey key = iterator.next();
                     iterator.remove();
 
-                    if (key.isValid()) {
-                        if (key.isAcceptable()) {
-                            accept(serverChannel, selector);
-                        }
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept(serverChannel, selector);
+                        continue;
+                    }
+                    ClientSession session = (ClientSession) key.attachment();
+                    try {
                         if (key.isReadable()) {
-                            SocketChannel clientChannel = (SocketChannel) key.channel();
-                            // если все норм то передаем задачу в пул потоков
-                            executorService.submit(() -> {
-                                try {
-                                    handleClient(clientChannel);
-                                } catch (IOException e) {
-                                    throw new RuntimeException(e);
-                                }
-                            });
+                            read(session);
                         }
+                        if (key.isValid() && key.isWritable()) {
+                            write(session);
+                        }
+                    } catch (IOException e) {
+                        logger.log(Level.WARNING, "Error handling client " + session.getAddress() + ": " + e.getMessage());
+                        close(session);
+                    } catch (RuntimeException e) {
+                        // запрос разбирается прямо тут, и кривой кадр одного клиента не должен ронять цикл для всех
+                        logger.log(Level.WARNING, "Malformed data from client " + session.getAddress() + ": " + e, e);
+                        close(session);
                     }
                 }
             }
@@ -123,9 +185,15 @@ public class ServerMain {
         } finally {
             try {
                 executorService.shutdown(); //стоппим пул потоков
+                writer.shutdown();
             } catch (Exception e) {
                 logger.log(Level.SEVERE, "Error shutting down executor: " + e.getMessage(), e);
             }
+            cursorManager.close();
+            if (responseCache != null) {
+                logger.info("Response cache: " + responseCache.getStats());
+            }
+            collectionManager.shutdownSaveExecutor();
             logger.info("Server stopped");
         }
     }
@@ -135,68 +203,330 @@ public class ServerMain {
         SocketChannel clientChannel = serverChannel.accept();
         if (clientChannel != null) {
             clientChannel.configureBlocking(false);
-            clientChannel.register(selector, SelectionKey.OP_READ);
-            logger.info("Client connected: " + clientChannel.getRemoteAddress());
+            SelectionKey key = clientChannel.register(selector, SelectionKey.OP_READ);
+            // у каждого соединения своя сессия с накопительным буфером и очередью ответов
+            ClientSession session = new ClientSession(clientChannel, key, String.valueOf(clientChannel.getRemoteAddress()));
+            key.attach(session);
+            logger.info("Client connected: " + session.getAddress());
         }
     }
 
-    private void handleClient(SocketChannel clientChannel) throws IOException {
-        ByteBuffer buffer = ByteBuffer.allocate(8192); // Размер буфера
-        try {
-            //ObjectInputStream objectInputStream = new ObjectInputStream(clientChannel.socket().getInputStream());
-            //ObjectOutputStream objectOutputStream = new ObjectOutputStream(clientChannel.socket().getOutputStream());
-            Request request;
-            while (true) {
-                int bytesRead = clientChannel.read(buffer);
-                if (bytesRead == -1) {
-                    logger.info("Client " + clientChannel.getRemoteAddress() + " disconnected.");
-                    break;
+    private void read(ClientSession session) throws IOException {
+        FrameReader frameReader = session.getFrameReader();
+        int bytesRead = frameReader.readFrom(session.getChannel());
+        // в одном чтении может быть и полкадра, и несколько кадров сразу
+        ByteBuffer frame;
+        while ((frame = frameReader.nextFrame()) != null) {
+            if (session.getCodec() == null) {
+                negotiateCodec(session, frame);
+                continue;
+            }
+            Request request = session.getCodec().readRequest(frame);
+            if (request != null) {
+                logger.info("Received request from " + session.getAddress() + ": " + request);
+                dispatch(session, request);
+            }
+        }
+        if (bytesRead == -1) {
+            logger.info("Client " + session.getAddress() + " disconnected.");
+            close(session);
+            return;
+        }
+        // как и с очередью ответов: не даем клиенту копить у нас запросы без предела, пусть ждет в своем сокете
+        if (session.getQueuedRequests() >= REQUESTS_HIGH_WATER) {
+            session.pauseReading();
+            SelectionKey key = session.getKey();
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            // воркер мог разгрести очередь раньше, чем увидел паузу - тогда вернуть чтение некому, кроме нас
+            if (session.resumeReadingIfBelow(REQUESTS_LOW_WATER)) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            }
+        }
+    }
+
+    // первый кадр от клиента - список кодеков, которые он понимает
+    private void negotiateCodec(ClientSession session, ByteBuffer offer) throws IOException {
+        Codec codec = Codecs.choose(offer);
+        session.setCodec(codec);
+        session.enqueue(Codecs.acceptFrame(codec));
+        write(session);
+        logger.info("Client " + session.getAddress() + " uses codec " + codec.getName());
+    }
+
+    // клиент может слать запросы не дожидаясь ответов. выполняются они все равно по одному и по порядку,
+    // так что ответы уходят в том же порядке и каждый помечен номером своего запроса
+    private void dispatch(ClientSession session, Request request) {
+        session.addRequest(request);
+        schedule(session);
+    }
+
+    private void schedule(ClientSession session) {
+        if (session.startDraining()) {
+            executorService.submit(() -> drain(session));
+        }
+    }
+
+    // за один заход не больше REQUESTS_PER_TURN запросов, чтобы один клиент не занимал воркер.
+    // если клиент не читает ответы, очередь встает до тех пор, пока он их не разгребет
+    private void drain(ClientSession session) {
+        for (int i = 0; i < REQUESTS_PER_TURN && session.isOpen(); i++) {
+            if (session.getBacklog() >= HIGH_WATER) {
+                session.park(() -> drain(session));
+                wakeForWrite(session);
+                return;
+            }
+            Request request = session.nextRequest();
+            if (request == null) {
+                break;
+            }
+            if (session.resumeReadingIfBelow(REQUESTS_LOW_WATER)) {
+                pendingReads.add(session);
+                selector.wakeup();
+            }
+            if (!process(session, request)) {
+                return; // ответ еще не готов, очередь продолжит тот, кто его допишет
+            }
+        }
+        session.stopDraining();
+        if (session.hasRequests() && session.isOpen()) {
+            schedule(session);
+        }
+    }
+
+    // false - ответ еще не дописан: изменение ждет потока записи или поток ждет, пока клиент дочитает начало.
+    // тогда очередь клиента продолжится, когда ответ допишется
+    private boolean process(ClientSession session, Request request) {
+        Command command = commands.get(request.getCommandName().toLowerCase());
+        if (command != null && command.getAccessMode() == AccessMode.WRITE) {
+            writer.execute(() -> {
+                if (reply(session, request, execute(session, request))) {
+                    executorService.submit(() -> drain(session));
                 }
-                if (bytesRead > 0) {
-                    buffer.flip();
-                    byte[] data = new byte[buffer.remaining()];
-                    buffer.get(data);
-                    request = deserializeRequest(data);
-                    buffer.clear(); //после чтения буфер очищаем
-
-                    if (request != null) {
-                        logger.info("Received request from " + clientChannel.getRemoteAddress() + ": " + request);
-                        Command command = commands.get(request.getCommandName().toLowerCase());
-
-                        Response response;
-                        if (command == null) {
-                            response = new Response("Command not found");
-                            logger.warning("Command not found from " + clientChannel.getRemoteAddress() + ": " + request.getCommandName());
-                        } else {
-                            response = command.execute(request);
-                            logger.info("Executed command '" + request.getCommandName() + "' for " + clientChannel.getRemoteAddress() + ", sent response: " + response);
-                        }
-                        byte[] responseBytes = serializeResponse(response);
-                        ByteBuffer responseBuffer = ByteBuffer.wrap(responseBytes);
-                        while (responseBuffer.hasRemaining()) {
-                            clientChannel.write(responseBuffer);
-                        }
-                    }
+            });
+            return false;
+        }
+        if (command != null && command.isCacheable() && responseCache != null) {
+            return replyCached(session, request);
+        }
+        return reply(session, request, execute(session, request));
+    }
+
+    // одинаковые чтения при неизменной коллекции отдаются готовыми кадрами, в которых меняется только номер запроса.
+    // в кэш попадает только то, что влезло в maxEntryBytes и посчиталось без изменений коллекции посередине:
+    // ни одно не шло, когда взяли версию, и ни одно не началось, пока ответ считали
+    private boolean replyCached(ClientSession session, Request request) {
+        Codec codec = session.getCodec();
+        int requestId = request.getRequestId();
+        long version = collectionManager.stableVersion();
+        if (version < 0) {
+            return reply(session, request, execute(session, request)); // коллекция как раз меняется, версии нет
+        }
+        ResponseCache.Key key = ResponseCache.key(codec.getName(), request.getCommandName().toLowerCase(),
+                request.getArguments(), version);
+        List<ByteBuffer> cached = responseCache.get(key);
+        if (cached != null && enqueueRenumbered(session, cached, requestId)) {
+            wakeForWrite(session);
+            return true;
+        }
+
+        Response response = execute(session, request);
+        StreamedResponse stream = null;
+        if (response instanceof StreamedResponse) {
+            stream = (StreamedResponse) response;
+            if (stream.isCursor()) {
+                return reply(session, request, response); // курсор живет в сессии, такое не кэшируется
+            }
+            stream.setRequestId(requestId);
+        }
+        List<ByteBuffer> frames = new ArrayList<>();
+        long size = 0;
+        do {
+            ByteBuffer frame = encode(session, stream != null ? stream.nextChunk() : response.withRequestId(requestId));
+            if (frame == null) {
+                wakeForWrite(session);
+                return true;
+            }
+            frames.add(frame);
+            size += frame.remaining();
+            session.enqueue(frame.duplicate()); // позицию двигает запись в сокет, а кэшу нужен кадр целиком
+        } while (stream != null && stream.hasNext() && size <= responseCache.getMaxEntryBytes());
+
+        if (stream != null && stream.hasNext()) {
+            return pump(session, stream); // не влез, остаток обычным потоком и без кэша
+        }
+        if (collectionManager.unchangedSince(version) && renumberable(codec, frames.get(0))) {
+            responseCache.put(key, frames, size);
+        }
+        wakeForWrite(session);
+        return true;
+    }
+
+    private static boolean renumberable(Codec codec, ByteBuffer frame) {
+        try {
+            return codec.renumberResponse(frame, 0) != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // false - кодек не умеет менять номер в готовом кадре, тогда ничего не отправлено
+    private boolean enqueueRenumbered(ClientSession session, List<ByteBuffer> frames, int requestId) {
+        List<ByteBuffer> renumbered = new ArrayList<>(frames.size());
+        try {
+            for (ByteBuffer frame : frames) {
+                ByteBuffer copy = session.getCodec().renumberResponse(frame, requestId);
+                if (copy == null) {
+                    return false;
                 }
+                renumbered.add(copy);
             }
         } catch (IOException e) {
-            logger.log(Level.WARNING, "Error handling client " + clientChannel.getRemoteAddress() + ": " + e.getMessage());
-        } catch (ClassNotFoundException e) {
-            throw new RuntimeException(e);
-        } finally {
+            logger.log(Level.WARNING, "Error renumbering cached response for " + session.getAddress() + ": " + e.getMessage());
+            return false;
+        }
+        renumbered.forEach(session::enqueue);
+        return true;
+    }
+
+    private boolean reply(ClientSession session, Request request, Response response) {
+        if (response instanceof StreamedResponse) {
+            StreamedResponse stream = (StreamedResponse) response;
+            if (!stream.isCursor()) {
+                stream.setRequestId(request.getRequestId());
+                return pump(session, stream);
+            }
+            response = cursorManager.open(session, stream);
+        }
+        if (send(session, response.withRequestId(request.getRequestId()))) {
+            wakeForWrite(session);
+        }
+        return true;
+    }
+
+    // кладет куски потокового ответа, пока у клиента в очереди не наберется HIGH_WATER байт,
+    // потом поток откладывается и продолжится, когда селектор допишет очередь до LOW_WATER.
+    // true - поток закончился
+    private boolean pump(ClientSession session, StreamedResponse stream) {
+        while (stream.hasNext() && session.isOpen() && session.getBacklog() < HIGH_WATER) {
+            if (!send(session, stream.nextChunk())) {
+                wakeForWrite(session);
+                return true; // кусок не сериализовался, остаток потока бросаем
+            }
+        }
+        boolean parked = stream.hasNext() && session.isOpen();
+        if (parked) {
+            session.park(() -> {
+                if (pump(session, stream)) {
+                    drain(session);
+                }
+            });
+        }
+        wakeForWrite(session);
+        return !parked;
+    }
+
+    private boolean send(ClientSession session, Response response) {
+        ByteBuffer frame = encode(session, response);
+        if (frame == null) {
+            return false;
+        }
+        session.enqueue(frame);
+        return true;
+    }
+
+    private ByteBuffer encode(ClientSession session, Response response) {
+        try {
+            return session.getCodec().encodeResponse(response);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error serializing response for " + session.getAddress() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // писать в сокет будет поток селектора, будим его
+    private void wakeForWrite(ClientSession session) {
+        pendingWrites.add(session);
+        selector.wakeup();
+    }
+
+    private Response execute(ClientSession session, Request request) {
+        Command command = commands.get(request.getCommandName().toLowerCase());
+        if (command == null) {
+            logger.warning("Command not found from " + session.getAddress() + ": " + request.getCommandName());
+            return new Response("Command not found");
+        }
+        try {
+            Response response = command.execute(request, session);
+            // на каждый запрос и с большими ответами, поэтому только имя и размер и только на FINE
+            logger.fine(() -> "Executed command '" + request.getCommandName() + "' for " + session.getAddress()
+                    + ", response size: " + responseSize(response));
+            return response;
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Command '" + request.getCommandName() + "' failed for " + session.getAddress() + ": " + e, e);
+            return new Response("на сервере что-то сломалось при выполнении команды: " + e.getMessage());
+        }
+    }
+
+    private static String responseSize(Response response) {
+        if (response instanceof StreamedResponse) {
+            return "streamed";
+        }
+        Object data = response.getData();
+        return data instanceof Collection ? ((Collection<?>) data).size() + " items" : data != null ? "1 item" : "no data";
+    }
+
+    private void processPendingReads() {
+        ClientSession session;
+        while ((session = pendingReads.poll()) != null) {
+            if (session.isOpen()) {
+                SelectionKey key = session.getKey();
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            }
+        }
+    }
+
+    private void processPendingWrites() {
+        ClientSession session;
+        while ((session = pendingWrites.poll()) != null) {
+            if (!session.isOpen()) {
+                continue;
+            }
             try {
-                clientChannel.close();
-                logger.log(Level.INFO, "Socket closed for " + clientChannel.getRemoteAddress());
-                collectionManager.shutdownSaveExecutor();
+                write(session);
             } catch (IOException e) {
-                logger.log(Level.SEVERE, "Error closing client socket for " + clientChannel.getRemoteAddress() + ": " + e.getMessage(), e);
-                collectionManager.shutdownSaveExecutor();
+                logger.log(Level.WARNING, "Error writing to client " + session.getAddress() + ": " + e.getMessage());
+                close(session);
             }
         }
     }
 
-    private static void registerCommands(Map<String, Command> commands,
-                                         CollectionManager collectionManager) {
+    private void write(ClientSession session) throws IOException {
+        SelectionKey key = session.getKey();
+        if (session.flush()) {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        } else {
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+        // клиент разгреб очередь - продолжаем отложенный ответ или запросы, но не в потоке селектора
+        Runnable resume = session.unparkIfBelow(LOW_WATER);
+        if (resume != null) {
+            executorService.submit(resume);
+        }
+    }
+
+    private void close(ClientSession session) {
+        session.getKey().cancel();
+        cursorManager.forget(session);
+        try {
+            session.getChannel().close();
+            logger.log(Level.INFO, "Socket closed for " + session.getAddress());
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error closing client socket for " + session.getAddress() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static void registerCommands(Map<String, Command> commands, CollectionManager collectionManager,
+                                         CursorManager cursorManager, ResponseCache responseCache) {
         commands.put("info", new Info(collectionManager));
         commands.put("show", new Show(collectionManager));
         commands.put("insert", new Insert(collectionManager));
@@ -212,20 +542,13 @@ public class ServerMain {
                 new AverageOfMetersAboveSeaLevel(collectionManager));
         commands.put("filter_starts_with_name",
                 new FilterStartsWithName(collectionManager));
-    }
-
-    private static byte[] serializeResponse(Response response) throws IOException {
-        try (ByteArrayOutputStream bos = new ByteArrayOutputStream();
-             ObjectOutputStream oos = new ObjectOutputStream(bos)) {
-            oos.writeObject(response);
-            return bos.toByteArray();
-        }
-    }
-
-    private static Request deserializeRequest(byte[] data) throws IOException, ClassNotFoundException {
-        try (ByteArrayInputStream bis = new ByteArrayInputStream(data);
-             ObjectInputStream ois = new ObjectInputStream(bis)) {
-            return (Request) ois.readObject();
-        }
+        commands.put("filter_key_range", new FilterKeyRange(collectionManager));
+        commands.put("show_top", new ShowTop(collectionManager, true));
+        commands.put("show_bottom", new ShowTop(collectionManager, false));
+        commands.put("count_by_category", new CountByCategory(collectionManager));
+        commands.put("filter_by_category", new FilterByCategory(collectionManager));
+        commands.put("fetch", new Fetch(cursorManager));
+        commands.put("batch", new Batch(collectionManager, commands));
+        commands.put("cache_stats", new CacheStats(responseCache));
     }
 }
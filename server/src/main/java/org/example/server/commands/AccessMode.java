@@ -0,0 +1,7 @@
+package org.example.server.commands;
+
+// что команда делает с коллекцией. чтения выполняются параллельно, изменения - по одному через поток записи
+public enum AccessMode {
+    READ,
+    WRITE
+}
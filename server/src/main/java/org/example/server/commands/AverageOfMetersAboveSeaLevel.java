@@ -12,6 +12,11 @@ public class AverageOfMetersAboveSeaLevel extends Command {
         this.collectionManager = collectionManager;
     }
 
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
     @Override
     public Response execute(Request request) {
         double average = collectionManager.getAverageMetersAboveSeaLevel();
@@ -0,0 +1,64 @@
+package org.example.server.commands;
+
+import org.example.collection.CollectionManager;
+import org.example.network.Request;
+import org.example.network.Response;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+// несколько команд одним запросом. аргументы - массив операций, каждая - массив строк: имя команды и ее аргументы.
+// выполняются по порядку под одной блокировкой коллекции, в журнал уходят одной записью.
+// ответ - по строке на операцию; неудачная операция остальные не отменяет, а вот неудачная запись в журнал - всю пачку
+public class Batch extends Command {
+    private final CollectionManager collectionManager;
+    private final Map<String, Command> commands;
+
+    public Batch(CollectionManager collectionManager, Map<String, Command> commands) {
+        super("batch", "выполнить пачку команд за один запрос", AccessMode.WRITE);
+        this.collectionManager = collectionManager;
+        this.commands = commands;
+    }
+
+    @Override
+    public Response execute(Request request) {
+        if (!(request.getArguments() instanceof Object[])) {
+            return new Response("batch ждет массив операций");
+        }
+        Object[] operations = (Object[]) request.getArguments();
+        try {
+            List<String> results = collectionManager.batch(() -> {
+                List<String> messages = new ArrayList<>(operations.length);
+                for (Object operation : operations) {
+                    messages.add(apply(operation));
+                }
+                return messages;
+            });
+            return new Response(null, results);
+        } catch (Exception e) {
+            return new Response("пачка не записалась в журнал и отменена целиком: " + e.getMessage());
+        }
+    }
+
+    private String apply(Object operation) {
+        if (!(operation instanceof String[]) || ((String[]) operation).length == 0) {
+            return "операция в пачке должна быть массивом строк: команда и аргументы";
+        }
+        String[] parts = (String[]) operation;
+        Command command = commands.get(parts[0].toLowerCase());
+        if (command == null || command == this || command instanceof Fetch) {
+            return "в пачке такой команды нет: " + parts[0];
+        }
+        try {
+            Response response = command.execute(new Request(parts[0], Arrays.copyOfRange(parts, 1, parts.length)));
+            if (response instanceof StreamedResponse) {
+                return "команда " + parts[0] + " отвечает списком, в пачке ее не выполнить";
+            }
+            return response.getMessage();
+        } catch (RuntimeException e) {
+            return "на сервере что-то сломалось при выполнении команды: " + e.getMessage();
+        }
+    }
+}
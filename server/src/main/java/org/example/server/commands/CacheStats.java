@@ -0,0 +1,22 @@
+package org.example.server.commands;
+
+import org.example.network.Request;
+import org.example.network.Response;
+import org.example.server.ResponseCache;
+
+public class CacheStats extends Command {
+    private final ResponseCache responseCache;
+
+    public CacheStats(ResponseCache responseCache) {
+        super("cache_stats", "вывести статистику кэша ответов");
+        this.responseCache = responseCache;
+    }
+
+    @Override
+    public Response execute(Request request) {
+        if (responseCache == null) {
+            return new Response("кэш ответов выключен");
+        }
+        return new Response("кэш ответов: " + responseCache.getStats());
+    }
+}
@@ -8,7 +8,7 @@ public class Clear extends Command {
     private final CollectionManager collectionManager;
 
     public Clear(CollectionManager collectionManager) {
-        super("clear", "очистить коллекцию");
+        super("clear", "очистить коллекцию", AccessMode.WRITE);
         this.collectionManager = collectionManager;
     }
 
@@ -2,15 +2,23 @@ package org.example.server.commands;
 
 import org.example.network.Request;
 import org.example.network.Response;
+import org.example.server.ClientSession;
 import java.util.Objects;
 
 public abstract class Command {
+    protected static final int BATCH_SIZE = 1000; // элементов в одном куске ответа-списка
     private final String name;
     private final String description;
+    private final AccessMode accessMode;
 
     public Command(String name, String description) {
+        this(name, description, AccessMode.READ);
+    }
+
+    public Command(String name, String description, AccessMode accessMode) {
         this.name = name;
         this.description = description;
+        this.accessMode = accessMode;
     }
 
     public String getName() {
@@ -21,8 +29,39 @@ public abstract class Command {
         return description;
     }
 
+    public AccessMode getAccessMode() {
+        return accessMode;
+    }
+
+    // ответ зависит только от аргументов и состояния коллекции, его можно отдавать из кэша, пока она не менялась
+    public boolean isCacheable() {
+        return false;
+    }
+
     public abstract Response execute(Request request);
 
+    // для команд, которым важно, от какого клиента пришел запрос (например, fetch по его курсору)
+    public Response execute(Request request, ClientSession session) {
+        return execute(request);
+    }
+
+    // клиент присылает аргументы массивом строк, но запрос можно собрать и с одной строкой - понимаем оба варианта
+    protected static String[] stringArguments(Request request) {
+        Object arguments = request.getArguments();
+        if (arguments instanceof String[]) {
+            return (String[]) arguments;
+        }
+        if (arguments instanceof String) {
+            return new String[]{(String) arguments};
+        }
+        return new String[0];
+    }
+
+    protected static String singleArgument(Request request) {
+        String[] arguments = stringArguments(request);
+        return arguments.length == 1 ? arguments[0] : null;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
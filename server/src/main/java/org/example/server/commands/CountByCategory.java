@@ -0,0 +1,43 @@
+package org.example.server.commands;
+
+import org.example.network.Request;
+import org.example.network.Response;
+import org.example.collection.CollectionManager;
+import org.example.collection.store.CityCategory;
+import java.util.Map;
+
+public class CountByCategory extends Command {
+    private final CollectionManager collectionManager;
+
+    public CountByCategory(CollectionManager collectionManager) {
+        super("count_by_category", "вывести количество элементов для каждого значения поля climate, government или standard_of_living");
+        this.collectionManager = collectionManager;
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
+    @Override
+    public Response execute(Request request) {
+        String arg = singleArgument(request);
+        if (arg == null || arg.isEmpty()) {
+            return new Response("по какому полю считать? climate, government или standard_of_living");
+        }
+        try {
+            CityCategory category = CityCategory.parse(arg);
+            StringBuilder message = new StringBuilder("количество по полю " + category.getFieldName() + ":");
+            for (Map.Entry<Enum<?>, Integer> entry : collectionManager.countByCategory(category).entrySet()) {
+                if (entry.getKey() == null && entry.getValue() == 0) {
+                    continue;
+                }
+                message.append("\n").append(entry.getKey() == null ? "не указано" : entry.getKey().name())
+                        .append(": ").append(entry.getValue());
+            }
+            return new Response(message.toString());
+        } catch (IllegalArgumentException e) {
+            return new Response(e.getMessage());
+        }
+    }
+}
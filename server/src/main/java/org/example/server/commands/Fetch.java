@@ -0,0 +1,29 @@
+package org.example.server.commands;
+
+import org.example.network.Request;
+import org.example.network.Response;
+import org.example.server.ClientSession;
+import org.example.server.CursorManager;
+
+public class Fetch extends Command {
+    private final CursorManager cursorManager;
+
+    public Fetch(CursorManager cursorManager) {
+        super("fetch", "получить следующую часть большого ответа по токену курсора");
+        this.cursorManager = cursorManager;
+    }
+
+    @Override
+    public Response execute(Request request) {
+        return new Response("fetch работает только внутри соединения, курсоры у каждого клиента свои");
+    }
+
+    @Override
+    public Response execute(Request request, ClientSession session) {
+        String token = singleArgument(request);
+        if (token == null || token.isEmpty()) {
+            return new Response("нужен токен курсора: fetch <token>");
+        }
+        return cursorManager.fetch(session, token);
+    }
+}
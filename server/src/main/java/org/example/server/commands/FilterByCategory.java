@@ -0,0 +1,36 @@
+package org.example.server.commands;
+
+import org.example.network.Request;
+import org.example.network.Response;
+import org.example.collection.CollectionManager;
+import org.example.collection.models.City;
+import org.example.collection.store.CityCategory;
+import java.util.Iterator;
+
+public class FilterByCategory extends Command {
+    private final CollectionManager collectionManager;
+
+    public FilterByCategory(CollectionManager collectionManager) {
+        super("filter_by_category", "вывести элементы, у которых поле climate, government или standard_of_living равно заданному");
+        this.collectionManager = collectionManager;
+    }
+
+    @Override
+    public Response execute(Request request) {
+        String[] args = stringArguments(request);
+        if (args.length != 2) {
+            return new Response("нужно поле и значение, например: filter_by_category climate TUNDRA");
+        }
+        try {
+            CityCategory category = CityCategory.parse(args[0]);
+            Enum<?> value = category.parseValue(args[1]);
+            Iterator<City> cities = collectionManager.filterByCategory(category, value);
+            if (!cities.hasNext()) {
+                return new Response("городов с " + category.getFieldName() + " = " + value + " нет");
+            }
+            return new StreamedResponse("города с " + category.getFieldName() + " = " + value + ":", cities, BATCH_SIZE, true);
+        } catch (IllegalArgumentException e) {
+            return new Response(e.getMessage());
+        }
+    }
+}
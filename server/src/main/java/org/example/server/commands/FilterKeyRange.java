@@ -0,0 +1,35 @@
+package org.example.server.commands;
+
+import org.example.network.Request;
+import org.example.network.Response;
+import org.example.collection.CollectionManager;
+import org.example.collection.models.City;
+import java.util.Iterator;
+
+public class FilterKeyRange extends Command {
+    private final CollectionManager collectionManager;
+
+    public FilterKeyRange(CollectionManager collectionManager) {
+        super("filter_key_range", "вывести элементы, ключ которых лежит между двумя заданными включительно");
+        this.collectionManager = collectionManager;
+    }
+
+    @Override
+    public Response execute(Request request) {
+        String[] args = stringArguments(request);
+        if (args.length != 2) {
+            return new Response("нужно два ключа: от и до");
+        }
+        try {
+            int from = Integer.parseInt(args[0]);
+            int to = Integer.parseInt(args[1]);
+            Iterator<City> cities = collectionManager.getByKeyRange(from, to);
+            if (!cities.hasNext()) {
+                return new Response("в диапазоне ключей от " + from + " до " + to + " пусто");
+            }
+            return new StreamedResponse("города с ключами от " + from + " до " + to + ":", cities, BATCH_SIZE, true);
+        } catch (NumberFormatException e) {
+            return new Response("ключи - это целые числа");
+        }
+    }
+}
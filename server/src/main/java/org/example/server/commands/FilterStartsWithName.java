@@ -4,8 +4,8 @@ import org.example.network.Request;
 import org.example.network.Response;
 import org.example.collection.CollectionManager;
 import org.example.collection.models.City;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Arrays;
+import java.util.Iterator;
 
 public class FilterStartsWithName extends Command {
     private final CollectionManager collectionManager;
@@ -17,16 +17,18 @@ public class FilterStartsWithName extends Command {
 
     @Override
     public Response execute(Request request) {
-        String prefix = (String) request.getArguments();
-        if (prefix == null || prefix.length() != 1) {
-            return new Response("ты что, одну букву ввести не можешь? нужен один аргумент: префикс");
+        // filter_starts_with_name [-i] <префикс>, -i - без учета регистра
+        String[] args = stringArguments(request);
+        boolean ignoreCase = args.length > 0 && "-i".equals(args[0]);
+        String prefix = String.join(" ", Arrays.copyOfRange(args, ignoreCase ? 1 : 0, args.length));
+        if (prefix.isEmpty()) {
+            return new Response("а префикс-то где? использование: filter_starts_with_name [-i] <префикс>");
         }
-        List<City> filteredCities = collectionManager.filterStartsWithName(prefix);
-        if (filteredCities.isEmpty()) {
+        Iterator<City> filteredCities = collectionManager.filterStartsWithName(prefix, ignoreCase);
+        if (!filteredCities.hasNext()) {
             return new Response("нет тут городов, которые начинаются на '" + prefix + "'");
-        } else {
-            String data = filteredCities.stream().map(City::toString).collect(Collectors.joining("\n"));
-            return new Response("города, которые начинаются на '" + prefix + "':\n" + data, filteredCities);
         }
+        // города только в data, без второй копии текстом в сообщении; остальное - через курсор
+        return new StreamedResponse("города, которые начинаются на '" + prefix + "':", filteredCities, BATCH_SIZE, true);
     }
-}
\ No newline at end of file
+}
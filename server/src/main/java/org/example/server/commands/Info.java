@@ -12,6 +12,11 @@ public class Info extends Command {
         this.collectionManager = collectionManager;
     }
 
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
     @Override
     public Response execute(Request request) {
         return new Response(collectionManager.getCollectionInfo());
@@ -10,7 +10,7 @@ public class Insert extends Command {
     private final CollectionManager collectionManager;
 
     public Insert(CollectionManager collectionManager) {
-        super("insert", "добавить новый элемент с автоматически сгенерированным ID");
+        super("insert", "добавить новый элемент с автоматически сгенерированным ID", AccessMode.WRITE);
         this.collectionManager = collectionManager;
     }
 
@@ -11,13 +11,13 @@ public class RemoveAllByStandardOfLiving extends Command {
     private final CollectionManager collectionManager;
 
     public RemoveAllByStandardOfLiving(CollectionManager collectionManager) {
-        super("remove_all_by_standard_of_living", "удалить из коллекции все элементы, значение поля standardOfLiving которых эквивалентно заданному");
+        super("remove_all_by_standard_of_living", "удалить из коллекции все элементы, значение поля standardOfLiving которых эквивалентно заданному", AccessMode.WRITE);
         this.collectionManager = collectionManager;
     }
 
     @Override
     public Response execute(Request request) {
-        String arg = (String) request.getArguments();
+        String arg = singleArgument(request);
         if (arg == null || arg.isEmpty()) {
             return new Response("а уровень жизни-то где?");
         }
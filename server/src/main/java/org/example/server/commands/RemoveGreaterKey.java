@@ -8,13 +8,13 @@ public class RemoveGreaterKey extends Command {
     private final CollectionManager collectionManager;
 
     public RemoveGreaterKey(CollectionManager collectionManager) {
-        super("remove_greater_key", "удалить из коллекции все элементы, ключ которых превышает заданный");
+        super("remove_greater_key", "удалить из коллекции все элементы, ключ которых превышает заданный", AccessMode.WRITE);
         this.collectionManager = collectionManager;
     }
 
     @Override
     public Response execute(Request request) {
-        String arg = (String) request.getArguments();
+        String arg = singleArgument(request);
         if (arg == null || arg.isEmpty()) {
             return new Response("ключ-то где?");
         }
@@ -8,13 +8,13 @@ public class RemoveKey extends Command {
     private final CollectionManager collectionManager;
 
     public RemoveKey(CollectionManager collectionManager) {
-        super("remove_key", "удалить элемент из коллекции по его ключу");
+        super("remove_key", "удалить элемент из коллекции по его ключу", AccessMode.WRITE);
         this.collectionManager = collectionManager;
     }
 
     @Override
     public Response execute(Request request) {
-        String arg = (String) request.getArguments();
+        String arg = singleArgument(request);
         if (arg == null || arg.isEmpty()) {
             return new Response("ну и какой ключ удалять будем, умник?");
         }
@@ -8,13 +8,13 @@ public class RemoveLowerKey extends Command {
     private final CollectionManager collectionManager;
 
     public RemoveLowerKey(CollectionManager collectionManager) {
-        super("remove_lower_key", "удалить из коллекции все элементы, ключ которых меньше, чем заданный");
+        super("remove_lower_key", "удалить из коллекции все элементы, ключ которых меньше, чем заданный", AccessMode.WRITE);
         this.collectionManager = collectionManager;
     }
 
     @Override
     public Response execute(Request request) {
-        String arg = (String) request.getArguments();
+        String arg = singleArgument(request);
         if (arg == null || arg.isEmpty()) {
             return new Response("а меньше какого ключа удалять-то будем?");
         }
@@ -10,7 +10,7 @@ public class ReplaceIfGreater extends Command {
     private final CollectionManager collectionManager;
 
     public ReplaceIfGreater(CollectionManager collectionManager) {
-        super("replace_if_greater", "заменить, если больше");
+        super("replace_if_greater", "заменить, если больше", AccessMode.WRITE);
         this.collectionManager = collectionManager;
     }
 
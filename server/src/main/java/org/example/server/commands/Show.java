@@ -4,25 +4,57 @@ import org.example.collection.models.City;
 import org.example.network.Request;
 import org.example.network.Response;
 import org.example.collection.CollectionManager;
-import java.util.Collection;
-import java.util.stream.Collectors;
+import org.example.collection.store.CitySnapshot;
+import org.example.utils.Iterators;
+import java.util.Iterator;
 
 public class Show extends Command {
     private final CollectionManager collectionManager;
 
     public Show(CollectionManager collectionManager) {
-        super("show", "вывести в стандартный поток вывода все элементы коллекции");
+        super("show", "вывести в стандартный поток вывода все элементы коллекции, или show <offset> <limit> - только страницу");
         this.collectionManager = collectionManager;
     }
 
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
     @Override
     public Response execute(Request request) {
-        Collection<City> cities = collectionManager.getSortedCollection();
-        if (cities.isEmpty()) {
+        String[] args = stringArguments(request);
+        long offset = 0;
+        long limit = Long.MAX_VALUE;
+        if (args.length == 2) {
+            try {
+                offset = Long.parseLong(args[0]);
+                limit = Long.parseLong(args[1]);
+            } catch (NumberFormatException e) {
+                return new Response("offset и limit должны быть числами");
+            }
+            if (offset < 0 || limit <= 0) {
+                return new Response("offset не может быть отрицательным, а limit должен быть больше нуля");
+            }
+        } else if (args.length != 0) {
+            return new Response("либо show, либо show <offset> <limit>");
+        }
+
+        // размер и сами города из одного снимка, так что заголовок сходится с выводом
+        CitySnapshot snapshot = collectionManager.snapshot();
+        int size = snapshot.size();
+        if (size == 0) {
             return new Response("да тут пусто, показывать-то нечего");
-        } else {
-            String data = cities.stream().map(City::toString).collect(Collectors.joining("\n"));
-            return new Response("элементы коллекции:\n" + data);
         }
+        if (offset >= size) {
+            return new Response("в коллекции всего " + size + " элементов, с " + offset + " показывать нечего");
+        }
+        // города идут прямо из снимка кусками, без сборки всего вывода в одну строку;
+        // к offset спускаемся по размерам поддеревьев, а не пролистываем первые offset городов
+        Iterator<City> cities = snapshot.byPopulation(offset);
+        String header = args.length == 0
+                ? "элементы коллекции (" + size + "):"
+                : "элементы коллекции начиная с " + offset + " (всего " + size + "):";
+        return new StreamedResponse(header, Iterators.limit(cities, limit), BATCH_SIZE);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,43 @@
+package org.example.server.commands;
+
+import org.example.network.Request;
+import org.example.network.Response;
+import org.example.collection.CollectionManager;
+import org.example.collection.models.City;
+import java.util.Iterator;
+
+public class ShowTop extends Command {
+    private final CollectionManager collectionManager;
+    private final boolean mostPopulated;
+
+    public ShowTop(CollectionManager collectionManager, boolean mostPopulated) {
+        super(mostPopulated ? "show_top" : "show_bottom",
+                mostPopulated ? "вывести n самых населенных городов" : "вывести n самых малонаселенных городов");
+        this.collectionManager = collectionManager;
+        this.mostPopulated = mostPopulated;
+    }
+
+    @Override
+    public Response execute(Request request) {
+        String arg = singleArgument(request);
+        if (arg == null || arg.isEmpty()) {
+            return new Response("а сколько городов показать?");
+        }
+        try {
+            int limit = Integer.parseInt(arg);
+            if (limit <= 0) {
+                return new Response("показать можно только положительное число городов");
+            }
+            Iterator<City> cities = mostPopulated
+                    ? collectionManager.getMostPopulated(limit)
+                    : collectionManager.getLeastPopulated(limit);
+            if (!cities.hasNext()) {
+                return new Response("да тут пусто, показывать-то нечего");
+            }
+            return new StreamedResponse(mostPopulated ? "самые населенные города:" : "самые малонаселенные города:",
+                    cities, BATCH_SIZE, true);
+        } catch (NumberFormatException e) {
+            return new Response("количество - это целое число");
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.example.server.commands;
+
+import org.example.network.Response;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+// ответ, который уходит клиенту кусками по chunkSize элементов, так что целиком он не лежит в памяти
+// ни на сервере, ни у клиента. сам по сетке не передается. два способа доставки:
+// поток - сервер сам шлет куски с partial = true, пока клиент успевает читать;
+// курсор - клиент получает первый кусок и токен, остальное забирает сам через fetch <token>
+public class StreamedResponse extends Response {
+    private static final long serialVersionUID = 61840273L;
+
+    private final transient Iterator<?> items;
+    private final int chunkSize;
+    private final boolean cursor;
+    private boolean first = true;
+    private volatile int requestId; // куски помечаются номером запроса, его проставляет сервер
+
+    public StreamedResponse(String message, Iterator<?> items, int chunkSize) {
+        this(message, items, chunkSize, false);
+    }
+
+    public StreamedResponse(String message, Iterator<?> items, int chunkSize, boolean cursor) {
+        super(message);
+        this.items = items;
+        this.chunkSize = chunkSize;
+        this.cursor = cursor;
+    }
+
+    public boolean isCursor() {
+        return cursor;
+    }
+
+    public void setRequestId(int requestId) {
+        this.requestId = requestId;
+    }
+
+    public synchronized boolean hasNext() {
+        return first || items.hasNext();
+    }
+
+    // заголовок идет только в первом куске
+    public synchronized Response nextChunk() {
+        List<Object> chunk = new ArrayList<>(chunkSize);
+        while (chunk.size() < chunkSize && items.hasNext()) {
+            chunk.add(items.next());
+        }
+        String message = first ? getMessage() : null;
+        first = false;
+        return new Response(message, chunk, items.hasNext(), null, requestId);
+    }
+}
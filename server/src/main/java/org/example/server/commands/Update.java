@@ -10,7 +10,7 @@ public class Update extends Command {
     private final CollectionManager collectionManager;
 
     public Update(CollectionManager collectionManager) {
-        super("update", "обновить элемент по заданному ключу, получая все новые данные в одной строке");
+        super("update", "обновить элемент по заданному ключу, получая все новые данные в одной строке", AccessMode.WRITE);
         this.collectionManager = collectionManager;
     }
 
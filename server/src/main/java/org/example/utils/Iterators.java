@@ -0,0 +1,94 @@
+package org.example.utils;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// ленивые обертки над итераторами: ответы команд идут прямо из индексов, ничего не собирая в списки
+public final class Iterators {
+    private Iterators() {
+    }
+
+    // null-результаты пропускаются: ключ могли удалить, пока мы шли по индексу
+    public static <A, B> Iterator<B> map(Iterator<A> source, Function<? super A, ? extends B> mapper) {
+        return new LookaheadIterator<>() {
+            @Override
+            protected B advance() {
+                while (source.hasNext()) {
+                    B value = mapper.apply(source.next());
+                    if (value != null) {
+                        return value;
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    // до первого неподходящего элемента, дальше не смотрим
+    public static <T> Iterator<T> takeWhile(Iterator<T> source, Predicate<? super T> condition) {
+        return new LookaheadIterator<>() {
+            private boolean stopped;
+
+            @Override
+            protected T advance() {
+                if (stopped || !source.hasNext()) {
+                    return null;
+                }
+                T value = source.next();
+                if (!condition.test(value)) {
+                    stopped = true;
+                    return null;
+                }
+                return value;
+            }
+        };
+    }
+
+    public static <T> Iterator<T> limit(Iterator<T> source, long limit) {
+        return new Iterator<>() {
+            private long left = limit;
+
+            @Override
+            public boolean hasNext() {
+                return left > 0 && source.hasNext();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                left--;
+                return source.next();
+            }
+        };
+    }
+
+    // следующий элемент достается заранее; null из advance - конец
+    private abstract static class LookaheadIterator<T> implements Iterator<T> {
+        private T next;
+        private boolean ready;
+
+        protected abstract T advance();
+
+        @Override
+        public boolean hasNext() {
+            if (!ready) {
+                next = advance();
+                ready = true;
+            }
+            return next != null;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ready = false;
+            return next;
+        }
+    }
+}
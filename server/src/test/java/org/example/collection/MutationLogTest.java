@@ -0,0 +1,148 @@
+package org.example.collection;
+
+import org.example.collection.models.City;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MutationLogTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void replayAfterRotationGivesEveryMutationInOrder() throws IOException {
+        Path path = dir.resolve("collection.wal");
+        try (MutationLog log = new MutationLog(path, SyncPolicy.ALWAYS, 0)) {
+            log.append(Mutation.insert(1, city("Москва")));
+            log.append(Mutation.update(1, city("Омск")));
+            log.append(Mutation.remove(2));
+
+            Path rotated = log.rotate();
+            assertEquals(MutationLog.rotatedPath(path), rotated);
+            assertEquals(0, log.size());
+
+            log.append(Mutation.insert(3, city("Тверь")));
+            log.append(Mutation.clear());
+            assertEquals(2, log.size());
+        }
+
+        // при загрузке сначала .old (если компакция не успела его удалить), потом текущий журнал
+        List<Mutation> replayed = new ArrayList<>();
+        assertEquals(3, MutationLog.replay(MutationLog.rotatedPath(path), replayed::add));
+        assertEquals(2, MutationLog.replay(path, replayed::add));
+
+        assertEquals("[INSERT 1 Москва, UPDATE 1 Омск, REMOVE 2 null, INSERT 3 Тверь, CLEAR null null]", describe(replayed));
+    }
+
+    @Test
+    void rotationAppendsToUnfinishedOldLog() throws IOException {
+        Path path = dir.resolve("collection.wal");
+        try (MutationLog log = new MutationLog(path, SyncPolicy.NONE, 0)) {
+            log.append(Mutation.insert(1, city("a")));
+            log.rotate();
+            log.append(Mutation.insert(2, city("b")));
+            log.append(Mutation.remove(1));
+            log.rotate();
+        }
+
+        List<Mutation> replayed = new ArrayList<>();
+        assertEquals(3, MutationLog.replay(MutationLog.rotatedPath(path), replayed::add));
+        assertEquals(0, MutationLog.replay(path, replayed::add));
+
+        assertEquals("[INSERT 1 a, INSERT 2 b, REMOVE 1 null]", describe(replayed));
+    }
+
+    @Test
+    void groupIsWrittenWhole() throws IOException {
+        Path path = dir.resolve("collection.wal");
+        try (MutationLog log = new MutationLog(path, SyncPolicy.ALWAYS, 0)) {
+            log.append(Mutation.insert(1, city("a")));
+            log.beginGroup();
+            log.append(Mutation.insert(2, city("b")));
+            log.append(Mutation.insert(3, city("c")));
+            assertEquals(1, MutationLog.replay(path, mutation -> { }));
+            log.commitGroup();
+            assertEquals(3, log.size());
+        }
+
+        assertEquals(3, MutationLog.replay(path, mutation -> { }));
+    }
+
+    // упали посреди записи: последняя строка оборвана, ее отрезаем, а все до нее проигрываем
+    @Test
+    void tornLastLineIsCutOff() throws IOException {
+        Path path = dir.resolve("collection.wal");
+        try (MutationLog log = new MutationLog(path, SyncPolicy.ALWAYS, 0)) {
+            log.append(Mutation.insert(1, city("a")));
+            log.append(Mutation.remove(1));
+        }
+        long complete = Files.size(path);
+        Files.write(path, "{\"type\":\"INSERT\",\"key\":2,\"ci".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        List<Mutation> replayed = new ArrayList<>();
+        assertEquals(2, MutationLog.replay(path, replayed::add));
+        assertEquals("[INSERT 1 a, REMOVE 1 null]", describe(replayed));
+        assertEquals(complete, Files.size(path));
+
+        // после обрезки в журнал снова можно писать, и новая запись встает с новой строки
+        try (MutationLog log = new MutationLog(path, SyncPolicy.ALWAYS, 0)) {
+            log.append(Mutation.insert(2, city("b")));
+        }
+        replayed.clear();
+        assertEquals(3, MutationLog.replay(path, replayed::add));
+        assertEquals("[INSERT 1 a, REMOVE 1 null, INSERT 2 b]", describe(replayed));
+    }
+
+    @Test
+    void brokenLineInTheMiddleIsAnError() throws IOException {
+        Path path = dir.resolve("collection.wal");
+        try (MutationLog log = new MutationLog(path, SyncPolicy.ALWAYS, 0)) {
+            log.append(Mutation.insert(1, city("a")));
+        }
+        Files.write(path, "мусор\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        try (MutationLog log = new MutationLog(path, SyncPolicy.ALWAYS, 0)) {
+            log.append(Mutation.remove(1));
+        }
+        long size = Files.size(path);
+
+        IOException error = assertThrows(IOException.class, () -> MutationLog.replay(path, mutation -> { }));
+
+        assertTrue(error.getMessage().contains("поврежден"));
+        assertEquals(size, Files.size(path));
+    }
+
+    @Test
+    void missingLogReplaysNothing() throws IOException {
+        Path path = dir.resolve("nothing.wal");
+
+        assertEquals(0, MutationLog.replay(path, mutation -> { }));
+        assertFalse(Files.exists(path));
+    }
+
+    private static String describe(List<Mutation> mutations) {
+        List<String> described = new ArrayList<>();
+        for (Mutation mutation : mutations) {
+            City city = mutation.getCity();
+            described.add(mutation.getType() + " " + mutation.getKey() + " " + (city == null ? null : city.getName()));
+        }
+        return described.toString();
+    }
+
+    private static City city(String name) {
+        City city = new City();
+        city.setName(name);
+        return city;
+    }
+}
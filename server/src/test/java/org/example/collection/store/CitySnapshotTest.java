@@ -0,0 +1,214 @@
+package org.example.collection.store;
+
+import org.example.collection.models.City;
+import org.example.collection.models.Climate;
+import org.example.collection.models.Government;
+import org.example.collection.models.StandardOfLiving;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CitySnapshotTest {
+    private static final String[] NAMES = {"Москва", "москва", "Мурманск", "Омск", "омск", "Тверь", "Томск", "а", ""};
+
+    @Test
+    void emptySnapshotHasNothing() {
+        CitySnapshot snapshot = CitySnapshot.EMPTY;
+
+        assertEquals(0, snapshot.size());
+        assertFalse(snapshot.iterator().hasNext());
+        assertFalse(snapshot.byPopulation(0).hasNext());
+        assertFalse(snapshot.startingWith("", true).hasNext());
+        assertNull(snapshot.get(1));
+        assertTrue(snapshot.isBalanced());
+    }
+
+    @Test
+    void everyChangeGivesNextVersionAndLeavesOldSnapshotAlone() {
+        City city = city(new Random(1), 5);
+        CitySnapshot first = CitySnapshot.EMPTY.with(5, city);
+        CitySnapshot second = first.without(5);
+        CitySnapshot third = second.without(5);
+
+        assertEquals(CitySnapshot.EMPTY.version() + 1, first.version());
+        assertEquals(first.version() + 1, second.version());
+        assertEquals(second.version() + 1, third.version());
+        assertSame(city, first.get(5));
+        assertEquals(1, first.size());
+        assertEquals(0, second.size());
+        assertEquals(0, CitySnapshot.EMPTY.size());
+    }
+
+    // случайные вставки, замены и удаления, по ходу сверяемые с TreeMap
+    @Test
+    void randomChangesMatchSortedMap() {
+        Random random = new Random(20240229);
+        TreeMap<Integer, City> expected = new TreeMap<>();
+        CitySnapshot snapshot = CitySnapshot.EMPTY;
+        for (int step = 0; step < 3000; step++) {
+            int key = random.nextInt(400);
+            long version = snapshot.version();
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                snapshot = snapshot.without(key);
+            } else {
+                City city = city(random, key);
+                expected.put(key, city);
+                snapshot = snapshot.with(key, city);
+            }
+            assertEquals(version + 1, snapshot.version());
+            if (step % 100 == 0) {
+                verify(expected, snapshot, random);
+            }
+        }
+        verify(expected, snapshot, random);
+    }
+
+    @Test
+    void rebuiltAndClearedSnapshotsAreConsistent() {
+        Random random = new Random(7);
+        TreeMap<Integer, City> expected = new TreeMap<>();
+        for (int key = 0; key < 1000; key++) {
+            expected.put(key * 3, city(random, key * 3));
+        }
+        List<Map.Entry<Integer, City>> entries = new ArrayList<>(expected.entrySet());
+        Collections.shuffle(entries, random);
+
+        CitySnapshot rebuilt = CitySnapshot.EMPTY.rebuilt(entries);
+        verify(expected, rebuilt, random);
+
+        CitySnapshot cleared = rebuilt.cleared();
+        assertEquals(rebuilt.version() + 1, cleared.version());
+        verify(new TreeMap<>(), cleared, random);
+        assertEquals(1000, rebuilt.size());
+    }
+
+    // удаления подряд с одного края - худший случай для баланса
+    @Test
+    void treesStayBalancedWhenShrinkingFromOneSide() {
+        CitySnapshot snapshot = CitySnapshot.EMPTY;
+        Random random = new Random(3);
+        for (int key = 0; key < 2000; key++) {
+            snapshot = snapshot.with(key, city(random, key));
+        }
+        for (int key = 0; key < 1500; key++) {
+            snapshot = snapshot.without(key);
+            assertTrue(snapshot.isBalanced(), "после удаления " + key);
+        }
+        assertEquals(500, snapshot.size());
+    }
+
+    private static void verify(TreeMap<Integer, City> expected, CitySnapshot snapshot, Random random) {
+        assertTrue(snapshot.isBalanced());
+        assertEquals(expected.size(), snapshot.size());
+        assertEquals(new ArrayList<>(expected.values()), list(snapshot.iterator()));
+        for (int key = 0; key < 20; key++) {
+            assertSame(expected.get(key), snapshot.get(key));
+        }
+
+        List<Integer> keys = new ArrayList<>();
+        List<City> cities = new ArrayList<>();
+        snapshot.forEach((key, city) -> {
+            keys.add(key);
+            cities.add(city);
+        });
+        assertEquals(new ArrayList<>(expected.keySet()), keys);
+        assertEquals(new ArrayList<>(expected.values()), cities);
+
+        int from = random.nextInt(400);
+        int to = from + random.nextInt(100);
+        assertEquals(new ArrayList<>(expected.subMap(from, true, to, true).values()), list(snapshot.keyRange(from, to)));
+
+        List<City> byPopulation = sorted(expected, Comparator.comparingLong(CitySnapshotTest::population));
+        assertEquals(byPopulation, list(snapshot.byPopulation(0)));
+        int offset = expected.isEmpty() ? 0 : random.nextInt(expected.size() + 1);
+        assertEquals(byPopulation.subList(offset, byPopulation.size()), list(snapshot.byPopulation(offset)));
+        assertFalse(snapshot.byPopulation(expected.size() + 5L).hasNext());
+        List<City> descending = new ArrayList<>(byPopulation);
+        Collections.reverse(descending);
+        assertEquals(descending, list(snapshot.byPopulationDescending()));
+
+        for (String prefix : List.of("", "М", "м", "Омск", "Т", "я")) {
+            assertEquals(startingWith(expected, prefix, false), list(snapshot.startingWith(prefix, false)), prefix);
+            assertEquals(startingWith(expected, prefix, true), list(snapshot.startingWith(prefix, true)), prefix);
+        }
+
+        for (CityCategory category : CityCategory.values()) {
+            Map<Enum<?>, Integer> counts = new LinkedHashMap<>();
+            for (Enum<?> value : category.getValues()) {
+                List<City> matching = expected.values().stream()
+                        .filter(city -> category.extract(city) == value)
+                        .collect(Collectors.toList());
+                assertEquals(matching, list(snapshot.withCategory(category, value)));
+                counts.put(value, matching.size());
+            }
+            counts.put(null, (int) expected.values().stream().filter(city -> category.extract(city) == null).count());
+            assertEquals(counts, snapshot.counts(category));
+        }
+    }
+
+    // при равных значениях снимок упорядочивает по ключу - ровно так, как TreeMap отдает города
+    private static List<City> sorted(TreeMap<Integer, City> cities, Comparator<City> order) {
+        List<City> sorted = new ArrayList<>(cities.values());
+        sorted.sort(order);
+        return sorted;
+    }
+
+    private static List<City> startingWith(TreeMap<Integer, City> cities, String prefix, boolean ignoreCase) {
+        List<City> matching = cities.values().stream()
+                .filter(city -> city.getName() != null && name(city, ignoreCase).startsWith(fold(prefix, ignoreCase)))
+                .collect(Collectors.toList());
+        matching.sort(Comparator.comparing(city -> name(city, ignoreCase)));
+        return matching;
+    }
+
+    private static String name(City city, boolean ignoreCase) {
+        return fold(city.getName(), ignoreCase);
+    }
+
+    private static String fold(String name, boolean ignoreCase) {
+        return ignoreCase ? name.toLowerCase(Locale.ROOT) : name;
+    }
+
+    private static long population(City city) {
+        return city.getPopulation() != null ? city.getPopulation() : Long.MIN_VALUE;
+    }
+
+    private static List<City> list(Iterator<City> iterator) {
+        List<City> list = new ArrayList<>();
+        iterator.forEachRemaining(list::add);
+        return list;
+    }
+
+    // мало разных значений, чтобы было много равных и незаданных
+    private static City city(Random random, int key) {
+        City city = new City();
+        city.setId(key);
+        city.setName(random.nextInt(10) == 0 ? null : NAMES[random.nextInt(NAMES.length)]);
+        city.setPopulation(random.nextInt(10) == 0 ? null : (long) random.nextInt(50) - 10);
+        city.setClimate(random.nextInt(5) == 0 ? null : pick(random, Climate.values()));
+        city.setGovernment(random.nextInt(5) == 0 ? null : pick(random, Government.values()));
+        city.setStandardOfLiving(random.nextInt(5) == 0 ? null : pick(random, StandardOfLiving.values()));
+        return city;
+    }
+
+    private static <T> T pick(Random random, T[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
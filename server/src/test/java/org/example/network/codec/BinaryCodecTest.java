@@ -0,0 +1,209 @@
+package org.example.network.codec;
+
+import org.example.collection.models.City;
+import org.example.collection.models.Climate;
+import org.example.collection.models.Coordinates;
+import org.example.collection.models.Human;
+import org.example.collection.models.StandardOfLiving;
+import org.example.network.FrameOutputStream;
+import org.example.network.Frames;
+import org.example.network.Request;
+import org.example.network.Response;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryCodecTest {
+    private final BinaryCodec codec = new BinaryCodec();
+
+    @Test
+    void requestWithStringArgumentsSurvivesRoundTrip() throws IOException {
+        Request request = new Request("insert", new String[]{"Москва", "1", "", "-5"}, 42);
+
+        Request decoded = codec.readRequest(payload(encode(request)));
+
+        assertEquals("insert", decoded.getCommandName());
+        assertArrayEquals((String[]) request.getArguments(), (String[]) decoded.getArguments());
+        assertEquals(42, decoded.getRequestId());
+    }
+
+    @Test
+    void requestWithCitySurvivesRoundTrip() throws IOException {
+        City city = city(7, "Казань", 1_200_000L);
+        Request request = new Request("update", new Object[]{"7", city}, 3);
+
+        Object[] arguments = (Object[]) codec.readRequest(payload(encode(request))).getArguments();
+
+        assertEquals("7", arguments[0]);
+        assertEquals(city.toString(), arguments[1].toString());
+    }
+
+    @Test
+    void cityWithoutOptionalFieldsSurvivesRoundTrip() throws IOException {
+        City city = new City();
+        city.setName("пусто");
+        Response response = new Response(null, List.of(city));
+
+        List<?> data = (List<?>) decode(encode(response)).getData();
+
+        assertEquals(city.toString(), data.get(0).toString());
+    }
+
+    @Test
+    void responseKeepsAllFields() throws IOException {
+        List<City> cities = List.of(city(1, "a", 10L), city(2, "b", 20L));
+        Response response = new Response("города:", cities, true, "token-1", 1000);
+
+        Response decoded = decode(encode(response));
+
+        assertEquals("города:", decoded.getMessage());
+        assertEquals(cities.toString(), decoded.getData().toString());
+        assertTrue(decoded.isPartial());
+        assertEquals("token-1", decoded.getToken());
+        assertEquals(1000, decoded.getRequestId());
+    }
+
+    @Test
+    void emptyResponseStaysEmpty() throws IOException {
+        Response decoded = decode(encode(new Response(null)));
+
+        assertNull(decoded.getMessage());
+        assertNull(decoded.getData());
+        assertFalse(decoded.isPartial());
+        assertNull(decoded.getToken());
+        assertEquals(0, decoded.getRequestId());
+    }
+
+    @Test
+    void unknownValueFallsBackToSerialization() throws IOException {
+        LocalDate date = LocalDate.of(2024, 2, 29);
+
+        Response decoded = decode(encode(new Response("дата", date)));
+
+        assertInstanceOf(LocalDate.class, decoded.getData());
+        assertEquals(date, decoded.getData());
+    }
+
+    @Test
+    void renumberedResponseKeepsEverythingButTheNumber() throws IOException {
+        List<City> cities = List.of(city(1, "a", 10L));
+        ByteBuffer frame = encode(new Response("из кэша", cities, true, "t", 1));
+        byte[] original = bytes(frame);
+
+        // 1 и 300 занимают разное число байт в varint, так что длина кадра тоже меняется
+        ByteBuffer renumbered = codec.renumberResponse(frame, 300);
+        Response decoded = decode(renumbered);
+
+        assertEquals(300, decoded.getRequestId());
+        assertEquals("из кэша", decoded.getMessage());
+        assertEquals(cities.toString(), decoded.getData().toString());
+        assertTrue(decoded.isPartial());
+        assertEquals("t", decoded.getToken());
+
+        // исходный кадр лежит в кэше и отдается другим клиентам, его трогать нельзя
+        assertArrayEquals(original, bytes(frame));
+        assertEquals(1, decode(frame).getRequestId());
+    }
+
+    @Test
+    void encodedResponseFrameMatchesStreamedOne() throws IOException {
+        Response response = new Response("города:", List.of(city(1, "a", 10L), city(2, "b", 20L)), true, "t", 7);
+
+        ByteBuffer first = codec.encodeResponse(response);
+        ByteBuffer second = codec.encodeResponse(response);
+
+        assertArrayEquals(bytes(encode(response)), bytes(first));
+        assertEquals(7, decode(first).getRequestId());
+        // буфер уходит вместе с кадром: следующий ответ не должен писать поверх еще не отправленного
+        assertNotSame(first.array(), second.array());
+        assertArrayEquals(bytes(first), bytes(second));
+    }
+
+    // десяток байт, объявляющих массив почти на 2^31 элементов: ошибка разбора, а не попытка выделить память
+    @Test
+    void hugeDeclaredLengthIsRejected() {
+        byte[] huge = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+        for (int tag : new int[]{8, 9, 10}) {
+            // номер запроса 1, команда "x", аргумент с тегом массива или списка
+            ByteBuffer request = ByteBuffer.wrap(concat(new byte[]{1, 2, 'x', (byte) tag}, huge));
+            assertThrows(IOException.class, () -> codec.readRequest(request));
+
+            // флаги, номер запроса, сообщение null, данные
+            ByteBuffer response = ByteBuffer.wrap(concat(new byte[]{0, 0, 0, (byte) tag}, huge));
+            assertThrows(IOException.class, () -> codec.readResponse(response));
+        }
+    }
+
+    @Test
+    void lengthBeyondFrameIsRejected() throws IOException {
+        ByteBuffer frame = encode(new Request("insert", new String[]{"a", "b", "c"}, 1));
+        byte[] bytes = bytes(frame);
+        // отрезаем последний аргумент: объявлено три строки, а в кадре места только на две
+        ByteBuffer truncated = ByteBuffer.wrap(bytes, Frames.HEADER_SIZE, bytes.length - Frames.HEADER_SIZE - 2);
+
+        assertThrows(IOException.class, () -> codec.readRequest(truncated));
+    }
+
+    private ByteBuffer encode(Request request) throws IOException {
+        FrameOutputStream out = new FrameOutputStream();
+        codec.writeRequest(request, out);
+        return out.toFrame();
+    }
+
+    private ByteBuffer encode(Response response) throws IOException {
+        FrameOutputStream out = new FrameOutputStream();
+        codec.writeResponse(response, out);
+        return out.toFrame();
+    }
+
+    private Response decode(ByteBuffer frame) throws IOException {
+        return codec.readResponse(payload(frame));
+    }
+
+    // кадр целиком -> то, что отдает FrameReader: без заголовка с длиной
+    private static ByteBuffer payload(ByteBuffer frame) {
+        assertEquals(frame.remaining() - Frames.HEADER_SIZE, frame.getInt(frame.position()));
+        ByteBuffer payload = frame.duplicate();
+        payload.position(payload.position() + Frames.HEADER_SIZE);
+        return payload;
+    }
+
+    private static byte[] bytes(ByteBuffer frame) {
+        byte[] bytes = new byte[frame.remaining()];
+        frame.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private static byte[] concat(byte[] head, byte[] tail) {
+        byte[] bytes = Arrays.copyOf(head, head.length + tail.length);
+        System.arraycopy(tail, 0, bytes, head.length, tail.length);
+        return bytes;
+    }
+
+    private static City city(int id, String name, Long population) {
+        City city = new City();
+        city.setId(id);
+        city.setName(name);
+        city.setCoordinates(new Coordinates(-3, 4L));
+        city.setArea(100);
+        city.setPopulation(population);
+        city.setMetersAboveSeaLevel(12.5f);
+        city.setClimate(Climate.TUNDRA);
+        city.setStandardOfLiving(StandardOfLiving.LOW);
+        city.setGovernor(new Human("губернатор"));
+        return city;
+    }
+}